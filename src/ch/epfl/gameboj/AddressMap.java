@@ -5,6 +5,8 @@ public interface AddressMap {
     int[] INTERRUPTS = new int[]{ 0x40, 0x48, 0x50, 0x58, 0x60 };
 
     int BOOT_ROM_START = 0x0000,  BOOT_ROM_END = 0x0100,  BOOT_ROM_SIZE  = BOOT_ROM_END - BOOT_ROM_START;
+    int CARTRIDGE_ROM_START = 0x0000, CARTRIDGE_ROM_END = 0x8000;
+    int CARTRIDGE_RAM_START = 0xA000, CARTRIDGE_RAM_END = 0xC000;
     int VIDEO_RAM_START = 0x8000, VIDEO_RAM_END = 0xA000, VIDEO_RAM_SIZE = VIDEO_RAM_END - VIDEO_RAM_START;
     int WORK_RAM_START = 0xC000,  WORK_RAM_END = 0xE000,  WORK_RAM_SIZE  = WORK_RAM_END - WORK_RAM_START;
     int ECHO_RAM_START = 0xE000,  ECHO_RAM_END = 0xFE00,  ECHO_RAM_SIZE  = ECHO_RAM_END - ECHO_RAM_START;
@@ -1,6 +1,6 @@
 package ch.epfl.gameboj;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 
 import ch.epfl.gameboj.component.Component;
@@ -8,14 +8,32 @@ import ch.epfl.gameboj.component.Component;
 /**
  * This class simulate a bus. His purpose is to connect all GameBoy's component
  * together and let them read and write informations into the memory.
+ * Each access is sent directly to the components mapped at its address,
+ * through a table indexed by the 8 MSB of the address and a finer table for
+ * the page of the IO registers.
  * 
  * @author Corentin Junod (283214)
  */
 public final class Bus {
     
     private final static int DEFAULT_READ_VALUE = 0xFF;
+    private final static int PAGE_SIZE = 0x100;
+    private final static int NUMBER_OF_PAGES = 0x100;
+    private final static int IO_PAGE = AddressMap.REGS_START >> Byte.SIZE;
+    private final static Component[] NO_COMPONENT = new Component[0];
     
-    private final ArrayList<Component> list = new ArrayList<Component>();
+    // Components mapped on each page, in the order they were attached
+    private final Component[][] pages = new Component[NUMBER_OF_PAGES][];
+    // Components mapped on each address of the IO page
+    private final Component[][] ioPage = new Component[PAGE_SIZE][];
+
+    /**
+     * Create a new Bus without any attached component.
+     */
+    public Bus() {
+        Arrays.fill(pages, NO_COMPONENT);
+        Arrays.fill(ioPage, NO_COMPONENT);
+    }
 
     /**
      * Add the component to the list of current attached component.
@@ -26,11 +44,23 @@ public final class Bus {
      *             if the given component is null
      */
     public void attach(Component component) {
-        this.list.add(Objects.requireNonNull(component));
+        Objects.requireNonNull(component);
+
+        for (int page = 0; page < NUMBER_OF_PAGES; page++) {
+            if (page == IO_PAGE) {
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    if (component.isMapped(AddressMap.REGS_START + i))
+                        ioPage[i] = append(ioPage[i], component);
+                }
+            } else if (isMappedOnPage(component, page)) {
+                pages[page] = append(pages[page], component);
+            }
+        }
     }
 
     /**
-     * Call the function read(address) on all attached components.
+     * Call the function read(address) on the attached components mapped at
+     * the given address.
      * 
      * @param address
      *            the 16 bits address that must be read
@@ -42,15 +72,17 @@ public final class Bus {
     public int read(int address) {
         Preconditions.checkBits16(address);
 
-        for (int i = 0; i < list.size(); i++) {
-            int val = list.get(i).read(address);
+        Component[] components = componentsAt(address);
+        for (int i = 0; i < components.length; i++) {
+            int val = components[i].read(address);
             if (val != Component.NO_DATA) return val;
         }
         return DEFAULT_READ_VALUE;
     }
 
     /**
-     * Call the function write(address,data) on all attached components.
+     * Call the function write(address,data) on the attached components mapped
+     * at the given address.
      * 
      * @param address
      *            the 16 bits address where the data must be written
@@ -64,8 +96,60 @@ public final class Bus {
         Preconditions.checkBits16(address);
         Preconditions.checkBits8(data);
 
-        for (int i = 0; i < this.list.size(); i++) {
-            list.get(i).write(address, data);
+        Component[] components = componentsAt(address);
+        for (int i = 0; i < components.length; i++) {
+            components[i].write(address, data);
         }
     }
+    
+    /**
+     * Read consecutive values, as "read" would, in a single pass. Used by the
+     * DMA transfers to copy a whole block of memory at once.
+     * 
+     * @param address
+     *            the 16 bits address of the first value
+     * @param values
+     *            the array in which the values are stored, its length being
+     *            the number of values to read
+     * @throws IllegalArgumentException
+     *             if one of the addresses is not a 16 bits value
+     */
+    public void read(int address, int[] values) {
+        Preconditions.checkBits16(address);
+        Preconditions.checkBits16(address + values.length - 1);
+
+        for (int i = 0; i < values.length; i++) {
+            Component[] components = componentsAt(address + i);
+            values[i] = DEFAULT_READ_VALUE;
+            for (int j = 0; j < components.length; j++) {
+                int val = components[j].read(address + i);
+                if (val != Component.NO_DATA) {
+                    values[i] = val;
+                    break;
+                }
+            }
+        }
+    }
+    
+    private Component[] componentsAt(int address) {
+        int page = address >> Byte.SIZE;
+        if (page == IO_PAGE)
+            return ioPage[address - AddressMap.REGS_START];
+        else
+            return pages[page];
+    }
+    
+    private static boolean isMappedOnPage(Component component, int page) {
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (component.isMapped(page * PAGE_SIZE + i))
+                return true;
+        }
+        return false;
+    }
+    
+    private static Component[] append(Component[] components, Component component) {
+        Component[] result = Arrays.copyOf(components, components.length + 1);
+        result[components.length] = component;
+        return result;
+    }
 }
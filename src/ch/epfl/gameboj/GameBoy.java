@@ -5,12 +5,14 @@ import java.util.Objects;
 import ch.epfl.gameboj.component.Joypad;
 import ch.epfl.gameboj.component.Timer;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.cpu.Alu;
 import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
 import ch.epfl.gameboj.component.memory.BootRomController;
 import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.RamController;
-import ch.epfl.gameboj.gui.ImageConverter;
+import ch.epfl.gameboj.gui.ScreenImage;
 import javafx.animation.AnimationTimer;
 import javafx.scene.image.ImageView;
 
@@ -23,7 +25,7 @@ import javafx.scene.image.ImageView;
  */
 /**
  * @author Corentin
- *
+ * 
  */
 public final class GameBoy {
     
@@ -33,6 +35,7 @@ public final class GameBoy {
     public static final double CYCLES_PER_NANOSECOND = CYCLES_PER_SECOND / 1e9;
 
     private long currentCycle = 0;
+    private long lcdEventCycle = 0; // Next cycle on which the LCD controller must run
 
     private Bus bus;
     private BootRomController bootRomController;
@@ -48,6 +51,9 @@ public final class GameBoy {
     private long baseTime;
     private long startTime;
     private int[] currentColorMap;
+    private Cpu.ExecutionMode cpuExecutionMode;
+    private boolean aluLookupTables;
+    private boolean parallelRendering;
     
     /**
      * The default color map for the Gameboy, black and white
@@ -71,6 +77,9 @@ public final class GameBoy {
         currentSpeed = 1;
         baseTime = 0;
         currentColorMap = DEFAULT_COLOR_MAP;
+        cpuExecutionMode = Cpu.ExecutionMode.INSTRUCTIONS;
+        aluLookupTables = false;
+        setParallelRendering(Runtime.getRuntime().availableProcessors() > 1);
     }
     
     /**
@@ -85,14 +94,33 @@ public final class GameBoy {
         if (animTimer != null)
             stop();
 
+        ScreenImage screenImage = new ScreenImage();
+        screen.setImage(screenImage.image());
+
         startTime = System.nanoTime();
         baseTime = 0;
         animTimer = new AnimationTimer() {
+            private LcdImage shownImage; // null if the screen is blank
+            private int[] shownColorMap;
+            private boolean shown;
+
             @Override
             public void handle(long now) {
                 double elapsedTime = baseTime + (now - startTime) * currentSpeed;
                 runUntil( (long) (GameBoy.CYCLES_PER_NANOSECOND * elapsedTime));
-                screen.setImage(ImageConverter.convert( lcdController.currentImage(), currentColorMap));
+
+                // The LcdController returns the same image while the frames
+                // don't change, and none is converted while the LCD is off
+                LcdImage image = lcdController.isScreenBlank() ? null : lcdController.currentImage();
+                if (!shown || image != shownImage || currentColorMap != shownColorMap) {
+                    if (image == null)
+                        screenImage.clear(currentColorMap);
+                    else
+                        screenImage.update(image, currentColorMap);
+                    shownImage = image;
+                    shownColorMap = currentColorMap;
+                    shown = true;
+                }
             }
         };
 
@@ -132,6 +160,50 @@ public final class GameBoy {
         currentColorMap = newColorMap.clone();
     }
 
+    /**
+     * Set the way the CPU of the gameboy executes the instructions. The
+     * emulation gives the same result in every mode.
+     * 
+     * @param mode
+     *            The new execution mode of the CPU, not null
+     * @throws NullPointerException
+     *             if the given mode is null
+     */
+    public void setCpuExecutionMode(Cpu.ExecutionMode mode) {
+        cpu.setExecutionMode(mode);
+        cpuExecutionMode = mode;
+    }
+
+    /**
+     * Set whether the ALU reads the results of its 8 bits operations in
+     * precomputed tables instead of computing them. The emulation gives the
+     * same result in both cases. The tables are built when the gameboy starts
+     * with this mode, or right away if it is already running. As the ALU is
+     * static, the mode applies to all the gameboys.
+     * 
+     * @param enabled
+     *            true to use the lookup tables
+     */
+    public void setAluLookupTables(boolean enabled) {
+        aluLookupTables = enabled;
+        if (animTimer != null)
+            Alu.setLookupTables(enabled);
+    }
+
+    /**
+     * Set whether the frames are computed in parallel with the emulation, on
+     * the other processors. The images are the same in both cases. By
+     * default, they are computed in parallel if there is more than one
+     * processor.
+     * 
+     * @param parallel
+     *            true to compute the frames in parallel
+     */
+    public void setParallelRendering(boolean parallel) {
+        lcdController.setParallelRendering(parallel);
+        parallelRendering = parallel;
+    }
+
     /**
      * Return the Bus created by the Gameboy.
      * @return the Gameboy Bus
@@ -198,6 +270,7 @@ public final class GameBoy {
     
     /**
      * Run the Gameboy until a given clock cycle.
+     * The cycles on which no component has something to do are skipped.
      * 
      * @param cycle
      *            the cycle until the Gameboy must run
@@ -210,10 +283,35 @@ public final class GameBoy {
         
         while (currentCycle < cycle) {
             timer.cycle(currentCycle);
-            lcdController.cycle(currentCycle);
-            cpu.cycle(currentCycle);
-            currentCycle++;
+            // The LCD controller only runs when one of its interrupts is due,
+            // it catches up on the other cycles when the CPU accesses it
+            if (currentCycle >= lcdEventCycle)
+                lcdController.cycle(currentCycle);
+            // The CPU can run ahead until the timer or the LCD have something to do
+            long limit = Math.min(timer.nextEventCycle(currentCycle), lcdController.nextEventCycle(currentCycle));
+            cpu.cycle(currentCycle, Math.min(cycle, limit));
+            lcdEventCycle = lcdController.nextEventCycle(currentCycle);
+            currentCycle = Math.min(cycle, nextEventCycle(currentCycle));
         }
+        
+        // The timer counters must be visible up to the last executed cycle. The
+        // image is, as it is completed with the vertical blank interrupt
+        if (cycle > 0) timer.cycle(cycle - 1);
+    }
+    
+    /**
+     * Returns the earliest cycle, after the given one, on which a component
+     * has something to do.
+     * 
+     * @param cycle
+     *            the last executed cycle
+     * @return the next cycle that must be executed
+     */
+    private long nextEventCycle(long cycle) {
+        long next = timer.nextEventCycle(cycle);
+        next = Math.min(next, lcdController.nextEventCycle(cycle));
+        next = Math.min(next, cpu.nextEventCycle(cycle));
+        return next;
     }
     
     /**
@@ -226,10 +324,14 @@ public final class GameBoy {
      */
     private void insertCartridge(Cartridge cartridge) {
         currentCycle = 0;
+        lcdEventCycle = 0;
         bootRomController = new BootRomController(Objects.requireNonNull(cartridge));
         cpu = new Cpu();
+        cpu.setExecutionMode(cpuExecutionMode);
+        Alu.setLookupTables(aluLookupTables);
         bus = new Bus();
         lcdController = new LcdController(cpu);
+        lcdController.setParallelRendering(parallelRendering);
         
         bootRomController.attachTo(bus);
         workRamController.attachTo(bus);
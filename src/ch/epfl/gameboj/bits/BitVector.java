@@ -46,7 +46,8 @@ import ch.epfl.gameboj.Preconditions;
         this(size, false);
     }
     
-    private BitVector(int[] values) {
+    // Takes the given array, used by MutableBitVector to convert itself
+    BitVector(int[] values) {
         dataTable = values;
     }
 
@@ -133,6 +134,40 @@ import ch.epfl.gameboj.Preconditions;
         return new BitVector(result);
     }
     
+    /**
+     * Return a new BitVector where every bit is given by a truth table, indexed
+     * by the bits at the same index in two vectors. Any combination of the two
+     * vectors is computed in a single pass, a word of 32 bits at a time.
+     * 
+     * @param high
+     *            the vector giving the high bit of the index in the table
+     * @param low
+     *            the vector giving the low bit of the index in the table
+     * @param table
+     *            the truth table, whose bit i is the result for the index i
+     * @return a new BitVector with the bits given by the table
+     * @throws NullPointerException
+     *             if one of the vectors is null
+     * @throws IllegalArgumentException
+     *             if the vectors have not the same size or if the table is not
+     *             a 4 bits value
+     */
+    public static BitVector combine(BitVector high, BitVector low, int table) {
+        Preconditions.checkArgument(high.size() == low.size());
+        Preconditions.checkArgument(table >= 0 && table < 1 << 4);
+
+        // Each bit of the table selects the bits where high and low give its index
+        int mask0 = Bits.test(table, 0) ? -1 : 0, mask1 = Bits.test(table, 1) ? -1 : 0;
+        int mask2 = Bits.test(table, 2) ? -1 : 0, mask3 = Bits.test(table, 3) ? -1 : 0;
+        
+        int[] result = new int[high.sizeInInts()];
+        for (int i = 0; i < result.length; i++) {
+            int h = high.dataTable[i], l = low.dataTable[i];
+            result[i] = (~h & ~l & mask0) | (~h & l & mask1) | (h & ~l & mask2) | (h & l & mask3);
+        }
+        return new BitVector(result);
+    }
+    
     /**
      * Extract the partial vector of a given length starting at a given position with a zero-extension
      * 
@@ -211,38 +246,45 @@ import ch.epfl.gameboj.Preconditions;
     private int sizeInInts() {
         return dataTable.length;
     }
+    
+    // The word of 32 bits at the given index, used by MutableBitVector
+    int word(int index) {
+        return dataTable[index];
+    }
 
+    // The words of the result are made of two consecutive source words,
+    // shifted by the same distance: the offset and the distance are computed
+    // once, and the source words only once each. An aligned extraction is a
+    // plain copy, in its own loop since a shift by 32 would do nothing
     private int[] extract(extractType type, int startIndex, int size) {
         requireIndexMultipleOf32(size);
 
         int[] result = new int[size / Integer.SIZE];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = getIntAt(type, startIndex + i * Integer.SIZE);
+        int quotien = Math.floorDiv(startIndex, Integer.SIZE);
+        int rest    = Math.floorMod(startIndex, Integer.SIZE);
+
+        if (rest == 0) {
+            for (int i = 0; i < result.length; i++)
+                result[i] = getInt(type, quotien + i);
+        } else {
+            int low = getInt(type, quotien);
+            for (int i = 0; i < result.length; i++) {
+                int high = getInt(type, quotien + i + 1);
+                result[i] = low >>> rest | high << (Integer.SIZE - rest);
+                low = high;
+            }
         }
         return result;
     }
 
-    private int getIntAt(extractType type, int index) {
-        int quotien = Math.floorDiv(index, Integer.SIZE);
-        int rest    = Math.floorMod(index, Integer.SIZE);
-
-        if (rest == 0) {
-            switch (type) {
-            case ZERO_EXTENDED:
-                if (index < 0 || quotien >= sizeInInts())
-                    return 0;
-                else
-                    return dataTable[quotien];
-            case WRAPPED:
-                return dataTable[Math.floorMod(quotien, sizeInInts())];
-            default:
-                throw new NullPointerException();
-            }
-        } else {
-            int lowInt  = getIntAt(type, quotien * Integer.SIZE);
-            int highInt = getIntAt(type, (quotien + 1) * Integer.SIZE);
-            int breakIndex = Integer.SIZE - rest;
-            return highInt << breakIndex | Bits.clip(breakIndex, lowInt >> rest);
+    private int getInt(extractType type, int index) {
+        switch (type) {
+        case ZERO_EXTENDED:
+            return index < 0 || index >= sizeInInts() ? 0 : dataTable[index];
+        case WRAPPED:
+            return dataTable[Math.floorMod(index, sizeInInts())];
+        default:
+            throw new NullPointerException();
         }
     }
     
@@ -0,0 +1,406 @@
+package ch.epfl.gameboj.bits;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import ch.epfl.gameboj.Preconditions;
+
+/**
+ * This class represents a mutable vector of bits with a specified length. It
+ * offers the operations of BitVector, but storing their result in a vector
+ * given by the caller instead of allocating a new one, so that the same
+ * vectors can be reused.
+ * 
+ * @author Corentin Junod (283214)
+ */
+public final class MutableBitVector {
+
+    private final int[] dataTable;
+
+    /**
+     * Create a new MutableBitVector of a given size filled with zeros
+     * 
+     * @param size
+     *            the size of the new vector
+     * @throws IllegalArgumentException
+     *             if the given size is negative or is not a multiple of 32
+     */
+    public MutableBitVector(int size) {
+        Preconditions.checkArgument(size > 0 && size % Integer.SIZE == 0);
+        dataTable = new int[size / Integer.SIZE];
+    }
+
+    /**
+     * Create a new MutableBitVector with the same bits as a given BitVector
+     * 
+     * @param vector
+     *            the vector to copy
+     * @throws NullPointerException
+     *             if the given vector is null
+     */
+    public MutableBitVector(BitVector vector) {
+        this(vector.size());
+        for (int i = 0; i < dataTable.length; i++)
+            dataTable[i] = vector.word(i);
+    }
+
+    /**
+     * Return the number of bit contained in the vector
+     * 
+     * @return The vector's length in bits
+     */
+    public int size() {
+        return dataTable.length * Integer.SIZE;
+    }
+
+    /**
+     * Test if the bit at a given index is set to 0 or 1
+     * 
+     * @param index
+     *            the index of the bit to test
+     * @return true if the tested bit is 1, false otherwise
+     * @throws IndexOutOfBoundsException
+     *             if the given index is negative or greater than the vector length
+     */
+    public boolean testBit(int index) {
+        Objects.checkIndex(index, size());
+        return Bits.test(dataTable[index / Integer.SIZE], index % Integer.SIZE);
+    }
+
+    /**
+     * Set all the bits of the vector to a given value
+     * 
+     * @param value
+     *            the new value of the bits
+     */
+    public void fill(boolean value) {
+        Arrays.fill(dataTable, value ? -1 : 0);
+    }
+
+    /**
+     * Set a given byte of the vector to a given value
+     * 
+     * @param index
+     *            the byte's index
+     * @param value
+     *            the new byte's value
+     * @throws IndexOutOfBoundsException
+     *             if the given index is negative or greater than the number
+     *             of bytes in the vector
+     * @throws IllegalArgumentException
+     *             if the given value is not an 8 bits value
+     */
+    public void setByte(int index, int value) {
+        Objects.checkIndex(index, dataTable.length * (Integer.SIZE / Byte.SIZE));
+        Preconditions.checkBits8(value);
+
+        int rest = index * Byte.SIZE % Integer.SIZE;
+        int quotien = index * Byte.SIZE / Integer.SIZE;
+        dataTable[quotien] = (dataTable[quotien] & ~(0b1111_1111 << rest)) | (value << rest);
+    }
+
+    /**
+     * Returns the 8 bits of the vector starting at a given bit index, which
+     * can be partly outside the vector: those bits are then 0
+     * 
+     * @param index
+     *            the index of the first bit, from -7 to the size of the vector
+     * @return the 8 bits starting at the index
+     */
+    public int byteAt(int index) {
+        int quotien = Math.floorDiv(index, Integer.SIZE);
+        int rest    = Math.floorMod(index, Integer.SIZE);
+        long bits = Integer.toUnsignedLong(getInt(quotien, false)) | (long) getInt(quotien + 1, false) << Integer.SIZE;
+        return (int) (bits >>> rest) & 0xFF;
+    }
+
+    /**
+     * Set the bits of the vector starting at a given bit index to those of a
+     * byte, where a mask byte is 1. The bits outside the vector are ignored.
+     * 
+     * @param index
+     *            the index of the first bit, from -7 to the size of the vector
+     * @param value
+     *            the new bits
+     * @param mask
+     *            the bits to change
+     */
+    public void setBitsAt(int index, int value, int mask) {
+        int quotien = Math.floorDiv(index, Integer.SIZE);
+        int rest    = Math.floorMod(index, Integer.SIZE);
+        long bits = (long) (value & mask & 0xFF) << rest;
+        long bitsMask = (long) (mask & 0xFF) << rest;
+
+        for (int i = 0; i < 2; i++) {
+            int word = quotien + i;
+            if (word >= 0 && word < dataTable.length)
+                dataTable[word] = dataTable[word] & ~(int) bitsMask | (int) bits;
+            bits >>>= Integer.SIZE;
+            bitsMask >>>= Integer.SIZE;
+        }
+    }
+
+    /**
+     * Store the complement of the vector in a given vector, which can be
+     * this one
+     * 
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if the given vector is null
+     * @throws IllegalArgumentException
+     *             if the given vector has not the same size as this one
+     */
+    public void notInto(MutableBitVector result) {
+        checkSameSize(result);
+        for (int i = 0; i < dataTable.length; i++)
+            result.dataTable[i] = ~dataTable[i];
+    }
+
+    /**
+     * Store the bitwise AND of this vector and a given one in a given vector,
+     * which can be one of them
+     * 
+     * @param vector
+     *            the other operand
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if one of the given vectors is null
+     * @throws IllegalArgumentException
+     *             if the given vectors have not the same size as this one
+     */
+    public void andInto(MutableBitVector vector, MutableBitVector result) {
+        checkSameSize(vector);
+        checkSameSize(result);
+        for (int i = 0; i < dataTable.length; i++)
+            result.dataTable[i] = dataTable[i] & vector.dataTable[i];
+    }
+
+    /**
+     * Store the bitwise OR of this vector and a given one in a given vector,
+     * which can be one of them
+     * 
+     * @param vector
+     *            the other operand
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if one of the given vectors is null
+     * @throws IllegalArgumentException
+     *             if the given vectors have not the same size as this one
+     */
+    public void orInto(MutableBitVector vector, MutableBitVector result) {
+        checkSameSize(vector);
+        checkSameSize(result);
+        for (int i = 0; i < dataTable.length; i++)
+            result.dataTable[i] = dataTable[i] | vector.dataTable[i];
+    }
+
+    /**
+     * Store in a given vector, which can be one of the operands, the bits of
+     * this vector where a mask is 0 and those of another vector where it is 1
+     * 
+     * @param vector
+     *            the vector whose bits are selected by the mask
+     * @param mask
+     *            the mask selecting the bits of "vector"
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if one of the given vectors is null
+     * @throws IllegalArgumentException
+     *             if the given vectors have not the same size as this one
+     */
+    public void selectInto(MutableBitVector vector, MutableBitVector mask, MutableBitVector result) {
+        checkSameSize(vector);
+        checkSameSize(mask);
+        checkSameSize(result);
+        for (int i = 0; i < dataTable.length; i++) {
+            int m = mask.dataTable[i];
+            result.dataTable[i] = (dataTable[i] & ~m) | (vector.dataTable[i] & m);
+        }
+    }
+
+    /**
+     * Store in a given vector, which can be one of the operands, the bits
+     * given by a truth table indexed by the bits of two vectors, as
+     * BitVector.combine does
+     * 
+     * @param high
+     *            the vector giving the high bit of the index in the table
+     * @param low
+     *            the vector giving the low bit of the index in the table
+     * @param table
+     *            the truth table, whose bit i is the result for the index i
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if one of the given vectors is null
+     * @throws IllegalArgumentException
+     *             if the vectors have not the same size or if the table is not
+     *             a 4 bits value
+     */
+    public static void combineInto(MutableBitVector high, MutableBitVector low, int table, MutableBitVector result) {
+        high.checkSameSize(low);
+        high.checkSameSize(result);
+        Preconditions.checkArgument(table >= 0 && table < 1 << 4);
+
+        int mask0 = Bits.test(table, 0) ? -1 : 0, mask1 = Bits.test(table, 1) ? -1 : 0;
+        int mask2 = Bits.test(table, 2) ? -1 : 0, mask3 = Bits.test(table, 3) ? -1 : 0;
+        for (int i = 0; i < result.dataTable.length; i++) {
+            int h = high.dataTable[i], l = low.dataTable[i];
+            result.dataTable[i] = (~h & ~l & mask0) | (~h & l & mask1) | (h & ~l & mask2) | (h & l & mask3);
+        }
+    }
+
+    /**
+     * Store in a given vector the part of this vector starting at a given
+     * position, with a zero-extension. The size of the part is the size of the
+     * given vector, which must not be this one.
+     * 
+     * @param startIndex
+     *            the starting index of the part
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if the given vector is null
+     * @throws IllegalArgumentException
+     *             if the given vector is this one
+     */
+    public void extractZeroExtendedInto(int startIndex, MutableBitVector result) {
+        extractInto(startIndex, result, false);
+    }
+
+    /**
+     * Store in a given vector the part of this vector starting at a given
+     * position, with a wrapped-extension. The size of the part is the size of
+     * the given vector, which must not be this one.
+     * 
+     * @param startIndex
+     *            the starting index of the part
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if the given vector is null
+     * @throws IllegalArgumentException
+     *             if the given vector is this one
+     */
+    public void extractWrappedInto(int startIndex, MutableBitVector result) {
+        extractInto(startIndex, result, true);
+    }
+
+    /**
+     * Store this vector shifted over a given distance in a given vector of the
+     * same size, which must not be this one
+     * 
+     * @param distance
+     *            the distance of the shift, positive means left, negative means right
+     * @param result
+     *            the vector receiving the result
+     * @throws NullPointerException
+     *             if the given vector is null
+     * @throws IllegalArgumentException
+     *             if the given vector is this one or has not the same size
+     */
+    public void shiftInto(int distance, MutableBitVector result) {
+        checkSameSize(result);
+        extractZeroExtendedInto(-distance, result);
+    }
+
+    /**
+     * Copy the bits of the vector in a given vector of the same size
+     * 
+     * @param result
+     *            the vector receiving the bits
+     * @throws NullPointerException
+     *             if the given vector is null
+     * @throws IllegalArgumentException
+     *             if the given vector has not the same size as this one
+     */
+    public void copyInto(MutableBitVector result) {
+        checkSameSize(result);
+        System.arraycopy(dataTable, 0, result.dataTable, 0, dataTable.length);
+    }
+
+    /**
+     * Copy the bits of the vector in an array, 32 bits per int, the bit 0 of
+     * the vector being the bit 0 of the first int
+     * 
+     * @param destination
+     *            the array receiving the bits
+     * @param offset
+     *            the index of the first int in the array
+     * @throws IndexOutOfBoundsException
+     *             if the array is too small
+     */
+    public void copyInto(int[] destination, int offset) {
+        System.arraycopy(dataTable, 0, destination, offset, dataTable.length);
+    }
+
+    /**
+     * Set the bits of the vector to those of an array, 32 bits per int, the
+     * bit 0 of the first int being the bit 0 of the vector
+     * 
+     * @param source
+     *            the array containing the bits
+     * @param offset
+     *            the index of the first int in the array
+     * @throws IndexOutOfBoundsException
+     *             if the array is too small
+     */
+    public void copyFrom(int[] source, int offset) {
+        System.arraycopy(source, offset, dataTable, 0, dataTable.length);
+    }
+
+    /**
+     * Return a BitVector with the current bits of this vector
+     * 
+     * @return a new BitVector with the same bits
+     */
+    public BitVector toBitVector() {
+        return new BitVector(dataTable.clone());
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toBitVector().toString();
+    }
+
+
+    /** Private functions **/
+
+    private void checkSameSize(MutableBitVector vector) {
+        Preconditions.checkArgument(vector.dataTable.length == dataTable.length);
+    }
+
+    // Same as BitVector.extract, in "result"
+    private void extractInto(int startIndex, MutableBitVector result, boolean wrapped) {
+        Preconditions.checkArgument(result != this);
+
+        int quotien = Math.floorDiv(startIndex, Integer.SIZE);
+        int rest    = Math.floorMod(startIndex, Integer.SIZE);
+
+        if (rest == 0) {
+            for (int i = 0; i < result.dataTable.length; i++)
+                result.dataTable[i] = getInt(quotien + i, wrapped);
+        } else {
+            int low = getInt(quotien, wrapped);
+            for (int i = 0; i < result.dataTable.length; i++) {
+                int high = getInt(quotien + i + 1, wrapped);
+                result.dataTable[i] = low >>> rest | high << (Integer.SIZE - rest);
+                low = high;
+            }
+        }
+    }
+
+    private int getInt(int index, boolean wrapped) {
+        if (wrapped)
+            return dataTable[Math.floorMod(index, dataTable.length)];
+        else
+            return index < 0 || index >= dataTable.length ? 0 : dataTable[index];
+    }
+}
@@ -14,4 +14,21 @@ public interface Clocked {
      *            the cycle to execute
      */
     public abstract void cycle(long cycle);
+
+    /**
+     * Returns the next cycle, after the given one, on which the object has
+     * something to do. The cycles in between can be skipped by the caller, so
+     * an object that changes on every cycle must catch up on them itself the
+     * next time "cycle" is called. By default, the object must be clocked on
+     * every cycle.
+     * 
+     * @param cycle
+     *            the last executed cycle
+     * @return the next cycle on which "cycle" must be called, or
+     *         Long.MAX_VALUE if the object is idle until something external
+     *         wakes it up
+     */
+    public default long nextEventCycle(long cycle) {
+        return cycle + 1;
+    }
 }
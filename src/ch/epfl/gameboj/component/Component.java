@@ -36,6 +36,21 @@ public interface Component {
      */
     public abstract void write(int address, int data);
 
+    /**
+     * Tell whether a given address is mapped to the component, that is if a
+     * read or a write at this address may concern it. The bus only forwards
+     * to the component the accesses on its mapped addresses, so the mapping
+     * must not change once the component is attached. By default, all
+     * addresses are mapped.
+     * 
+     * @param address
+     *            the 16 bits address to test
+     * @return true if the component may read or write at "address"
+     */
+    default boolean isMapped(int address) {
+        return true;
+    }
+
     /**
      * Attach the component to a given Bus.
      * 
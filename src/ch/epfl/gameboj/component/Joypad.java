@@ -76,6 +76,14 @@ public final class Joypad implements Component{
         }
     }
     
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return address == AddressMap.REG_P1;
+    }
+    
     /**
      * Set a key to a given position (pressed, unpressed)
      * 
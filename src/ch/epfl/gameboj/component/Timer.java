@@ -20,6 +20,7 @@ public final class Timer implements Component, Clocked {
     private static final int TICKS_PER_CYCLE = 4;
 
     private final Cpu cpu;
+    private long lastCycle; // last cycle on which the timer was clocked
     private int mainTimer;
     private int tima; // secondary timer
     private int tma;  // reset value for secondary timer
@@ -35,6 +36,7 @@ public final class Timer implements Component, Clocked {
      */
     public Timer(Cpu cpu) {
         this.cpu = Objects.requireNonNull(cpu);
+        lastCycle = -1;
         mainTimer = 0;
         tima = 0;
         tma = 0;
@@ -85,17 +87,57 @@ public final class Timer implements Component, Clocked {
         }
     }
 
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return address >= AddressMap.REG_DIV && address <= AddressMap.REG_TAC;
+    }
+
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Clocked#cycle(long)
      */
     @Override
     public void cycle(long cycle) {
-        boolean previousState = state();
-        mainTimer = Bits.clip(16, mainTimer + TICKS_PER_CYCLE);
-        incIfChange(previousState);
+        // If the time went backwards (new cartridge), restart from this cycle
+        if (cycle < lastCycle) lastCycle = cycle - 1;
+        long elapsed = cycle - lastCycle;
+        lastCycle = cycle;
+
+        long ticks = mainTimer + elapsed * TICKS_PER_CYCLE;
+        long fallingEdges = 0;
+        if (Bits.test(tac, 2)) {
+            int periodBits = stateBit() + 1;
+            fallingEdges = (ticks >> periodBits) - (mainTimer >> periodBits);
+        }
+
+        mainTimer = Bits.clip(16, (int) ticks);
+        for (long i = 0; i < fallingEdges; i++)
+            incTima();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Clocked#nextEventCycle(long)
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        if (!Bits.test(tac, 2))
+            return Long.MAX_VALUE;
+
+        // The only visible event is the overflow of TIMA, the counters are caught up lazily
+        long period = 1L << (stateBit() + 1);
+        long edgesToOverflow = 0x100 - tima;
+        long overflowTicks = ((mainTimer / period) + edgesToOverflow) * period;
+        long cyclesToOverflow = (overflowTicks - mainTimer + TICKS_PER_CYCLE - 1) / TICKS_PER_CYCLE;
+        return Math.max(cycle + 1, lastCycle + cyclesToOverflow);
     }
 
     private boolean state() {
+        return Bits.test(tac, 2) && Bits.test(mainTimer, stateBit());
+    }
+
+    private int stateBit() {
         int mainTimerBit = 0;
 
         switch (Bits.clip(2, tac)) {
@@ -112,17 +154,20 @@ public final class Timer implements Component, Clocked {
             mainTimerBit = 7;
             break;
         }
-        return Bits.test(tac, 2) && Bits.test(mainTimer, mainTimerBit);
+        return mainTimerBit;
     }
 
     private void incIfChange(boolean previousState) {
-        if (previousState && !state()) {
-            if (tima == 0xFF) {
-                cpu.requestInterrupt(Interrupt.TIMER);
-                tima = tma;
-            } else {
-                tima++;
-            }
+        if (previousState && !state())
+            incTima();
+    }
+
+    private void incTima() {
+        if (tima == 0xFF) {
+            cpu.requestInterrupt(Interrupt.TIMER);
+            tima = tma;
+        } else {
+            tima++;
         }
     }
 }
@@ -78,4 +78,12 @@ public final class Cartridge implements Component {
         Preconditions.checkBits8(data);
         MBC.write(address, data);
     }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return MBC.isMapped(address);
+    }
 }
@@ -50,4 +50,12 @@ public final class MBC0 implements Component {
     public void write(int address, int data) {
         // Nothing to do, a ROM can't be written
     }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return address < Cartridge.ROM_0_SIZE;
+    }
 }
@@ -3,6 +3,7 @@ package ch.epfl.gameboj.component.cartridge;
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
+import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.memory.Ram;
@@ -70,6 +71,15 @@ public final class MBC1 implements Component {
         }
     }
 
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return (address >= AddressMap.CARTRIDGE_ROM_START && address < AddressMap.CARTRIDGE_ROM_END)
+            || (address >= AddressMap.CARTRIDGE_RAM_START && address < AddressMap.CARTRIDGE_RAM_END);
+    }
+
     private int msb2() {
         switch (mode) {
         case MODE_0: return 0;
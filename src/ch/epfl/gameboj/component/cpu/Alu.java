@@ -19,6 +19,71 @@ public final class Alu {
     // As this function provides only static methods, it is not instanciable
     private Alu(){}
 
+    // If true, the 8 bits operations read their result in the tables of LookupTables
+    private static boolean useLookupTables = false;
+
+    // Tables of all the results of the 8 bits operations, computed by the
+    // functions of Alu the first time they are enabled
+    private static final class LookupTables {
+        private static final int[] ADD   = new int[1 << 17]; // Indexed by c0, l, r
+        private static final int[] SUB   = new int[1 << 17]; // Indexed by b0, l, r
+        private static final int[] BCD   = new int[1 << 11]; // Indexed by n, h, c, v
+        private static final int[] ROT   = new int[1 << 9];  // Indexed by d, v
+        private static final int[] ROT_C = new int[1 << 10]; // Indexed by d, c, v
+        private static final int[] SHL   = new int[1 << 8];
+        private static final int[] SHR_A = new int[1 << 8];
+        private static final int[] SHR_L = new int[1 << 8];
+        private static final int[] SWAP  = new int[1 << 8];
+
+        static {
+            for (int l = 0; l <= 0xFF; l++) {
+                for (int r = 0; r <= 0xFF; r++) {
+                    ADD[index8x8(l, r, false)] = add(l, r, false);
+                    ADD[index8x8(l, r, true)]  = add(l, r, true);
+                    SUB[index8x8(l, r, false)] = sub(l, r, false);
+                    SUB[index8x8(l, r, true)]  = sub(l, r, true);
+                }
+                for (int nhc = 0; nhc < 8; nhc++)
+                    BCD[nhc << 8 | l] = bcdAdjust(l, Bits.test(nhc, 2), Bits.test(nhc, 1), Bits.test(nhc, 0));
+                for (RotDir d : RotDir.values()) {
+                    ROT[d.ordinal() << 8 | l] = rotate(d, l);
+                    ROT_C[indexRotC(d, l, false)] = rotate(d, l, false);
+                    ROT_C[indexRotC(d, l, true)]  = rotate(d, l, true);
+                }
+                SHL[l]   = shiftLeft(l);
+                SHR_A[l] = shiftRightA(l);
+                SHR_L[l] = shiftRightL(l);
+                SWAP[l]  = swap(l);
+            }
+        }
+
+        // Loading this class builds the tables
+        private static void build() {}
+
+        private static int index8x8(int l, int r, boolean c) {
+            return (c ? 1 << 16 : 0) | l << 8 | r;
+        }
+
+        private static int indexRotC(RotDir d, int v, boolean c) {
+            return d.ordinal() << 9 | (c ? 1 << 8 : 0) | v;
+        }
+    }
+
+    /**
+     * Enable or disable the lookup tables. When they are enabled, the results
+     * of the 8 bits additions, subtractions, BCD adjustments, rotations,
+     * shifts and swaps are read in precomputed tables instead of being
+     * computed. The tables are built the first time they are enabled.
+     * 
+     * @param enabled
+     *            true to use the lookup tables, false to compute the results
+     */
+    public static void setLookupTables(boolean enabled) {
+        if (enabled)
+            LookupTables.build(); // Must be done while the computations are used
+        useLookupTables = enabled;
+    }
+
     /**
      *  Represents the possible raised flags after an operation
      */
@@ -103,6 +168,8 @@ public final class Alu {
     public static int add(int l, int r, boolean c0) {
         Preconditions.checkBits8(l);
         Preconditions.checkBits8(r);
+        if (useLookupTables)
+            return LookupTables.ADD[LookupTables.index8x8(l, r, c0)];
 
         boolean h = (Bits.clip(4, l) + Bits.clip(4, r) + (c0 ? 1 : 0)) > 0xF;
         boolean c = (l + r + (c0 ? 1 : 0)) > 0xFF;
@@ -128,6 +195,8 @@ public final class Alu {
     public static int sub(int l, int r, boolean b0) {
         Preconditions.checkBits8(l);
         Preconditions.checkBits8(r);
+        if (useLookupTables)
+            return LookupTables.SUB[LookupTables.index8x8(l, r, b0)];
 
         boolean z = Bits.clip(8, l - r - (b0 ? 1 : 0)) == 0;
         boolean c = r + (b0 ? 1 : 0) > l;
@@ -227,6 +296,8 @@ public final class Alu {
      */
     public static int bcdAdjust(int v, boolean n, boolean h, boolean c) {
         Preconditions.checkArgument(v >= 0 && v <= 0xFF);
+        if (useLookupTables)
+            return LookupTables.BCD[(n ? 1 << 10 : 0) | (h ? 1 << 9 : 0) | (c ? 1 << 8 : 0) | v];
 
         boolean fixL = h || (!n && Bits.clip(4, v) > 9);
         boolean fixH = c || (!n && v > 0x99);
@@ -306,6 +377,8 @@ public final class Alu {
      */
     public static int shiftLeft(int v) {
         Preconditions.checkBits8(v);
+        if (useLookupTables)
+            return LookupTables.SHL[v];
         int result = Bits.clip(8, v << 1);
         return packValueZNHC(result, result == 0, false, false, Bits.test(v, 7));
     }
@@ -323,6 +396,8 @@ public final class Alu {
      */
     public static int shiftRightA(int v) {
         Preconditions.checkBits8(v);
+        if (useLookupTables)
+            return LookupTables.SHR_A[v];
         boolean c = Bits.test(v, 0);
         v = ((v << 24) >> 1) >>> 24;
         return packValueZNHC(v, v == 0, false, false, c);
@@ -341,6 +416,8 @@ public final class Alu {
      */
     public static int shiftRightL(int v) {
         Preconditions.checkBits8(v);
+        if (useLookupTables)
+            return LookupTables.SHR_L[v];
         boolean c = Bits.test(v, 0);
         v = v >>> 1;
         return packValueZNHC(v, v == 0, false, false, c);
@@ -360,6 +437,8 @@ public final class Alu {
      */
     public static int rotate(RotDir d, int v) {
         Preconditions.checkBits8(v);
+        if (useLookupTables)
+            return LookupTables.ROT[d.ordinal() << 8 | v];
 
         boolean c = false;
         if (d == RotDir.LEFT) {
@@ -388,6 +467,8 @@ public final class Alu {
      */
     public static int rotate(RotDir d, int v, boolean c) {
         Preconditions.checkBits8(v);
+        if (useLookupTables)
+            return LookupTables.ROT_C[LookupTables.indexRotC(d, v, c)];
 
         if (c) v += Bits.mask(8);
         
@@ -415,6 +496,8 @@ public final class Alu {
      */
     public static int swap(int v) {
         Preconditions.checkBits8(v);
+        if (useLookupTables)
+            return LookupTables.SWAP[v];
         v = Bits.rotate(8, v, 4);
         return packValueZNHC(v, v == 0, false, false, false);
     }
@@ -5,8 +5,6 @@ import java.util.Objects;
 import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Preconditions;
-import ch.epfl.gameboj.Register;
-import ch.epfl.gameboj.RegisterFile;
 import ch.epfl.gameboj.bits.Bit;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Clocked;
@@ -27,10 +25,22 @@ public final class Cpu implements Component, Clocked {
     private static final int OPCODE_PREFIX = 0xCB;
     private static final int PC_NOT_CHANGED = -1;
     private static final int CYCLES_AFTER_DETECT_INTERRUPT = 5;
+    private static final int NOT_DECODED = 0;
+    private static final int MAX_INSTRUCTION_SIZE = 3;
+    private static final int ECHO_RAM_OFFSET = AddressMap.ECHO_RAM_START - AddressMap.WORK_RAM_START;
+    private static final int MAX_BUSY_WAIT_LOOP_SIZE = 16;
+    private static final int DMA_DURATION = AddressMap.OAM_RAM_SIZE;
+    private static final int DMA_READ_VALUE = 0xFF;
     
     // Two tables that retrieve an Opcode given an Opcode encoding
     private static final Opcode[] DIRECT_OPCODE_TABLE   = buildOpcodeTable(Opcode.Kind.DIRECT);
     private static final Opcode[] PREFIXED_OPCODE_TABLE = buildOpcodeTable(Opcode.Kind.PREFIXED);
+    private static final Opcode[] ALL_OPCODES = Opcode.values();
+    private static final Interrupt[] ALL_INTERRUPTS = Interrupt.values();
+    
+    // The handlers of all the direct encodings, followed by the ones of the prefixed encodings
+    private static final int ENCODINGS_PER_KIND = 256;
+    private static final Handler[] HANDLERS = buildHandlers();
 
     // Used to create the two tables above
     private static Opcode[] buildOpcodeTable(Opcode.Kind kind) {
@@ -41,13 +51,30 @@ public final class Cpu implements Component, Clocked {
         return res;
     }
 
+    // Used to create the table of handlers above
+    private static Handler[] buildHandlers() {
+        Handler[] res = new Handler[2 * ENCODINGS_PER_KIND];
+        for (Opcode o : Opcode.values())
+            res[handlerIndex(o)] = buildHandler(o);
+        return res;
+    }
+    
+    private static int handlerIndex(Opcode opcode) {
+        if (opcode.kind == Opcode.Kind.PREFIXED)
+            return ENCODINGS_PER_KIND + opcode.encoding;
+        else
+            return opcode.encoding;
+    }
+
 /*** Attributes and Enumerations ****/
     
     private Bus bus;
-    private final RegisterFile<Reg> regFile;
+    private final int[] registers; // The 8 bits registers, see REG_A
     private final Ram highRam;
 
     private long nextNonIdleCycle;
+    private long lastCycle; // Last cycle given to "cycle"
+    private long dmaEndCycle; // Until this cycle, only the high RAM is reachable
 
     private int PC;    // Program Counter
     private int SP;    // Stack Pointer
@@ -56,15 +83,46 @@ public final class Cpu implements Component, Clocked {
     private boolean IME; // Interrupts Master Enabled
     private int IE;      // Interrupts Enabled
     private int IF;      // Interrupts Flags
+    
+    // Decoded instructions (index of the Opcode + 1 and operands) by address
+    private final int[] decodedInstructions;
+    // Generation of the cartridge ROM for which each ROM instruction was decoded
+    private final int[] decodedGenerations;
+    private int romGeneration; // Incremented when the ROM banks may have changed
+    private int operands;      // Operands of the current instruction
+    
+    private ExecutionMode executionMode;
+    
+    // Last operation on A whose flags were not computed yet, see flags()
+    private DeferredFlags deferredFlags;
+    private int deferredL, deferredR;
+    private boolean deferredCarry;
+    
+    // Current iteration of a possible busy-wait loop
+    private int loopAddress;      // Target of the last backward jump
+    private long loopCycle;       // Cycle on which the iteration started
+    private long loopRegisters;   // Registers A to L when the iteration started
+    private int loopStack;        // SP and IME when the iteration started
+    private boolean wroteMemory;  // True if the iteration wrote in memory
+    private long readChangeCycle = Long.MAX_VALUE; // First change of a value read by the iteration
+
+    //Indices of the registers in "registers". B to L and A have the index
+    //used to encode them in the opcodes, and F takes the one of (HL)
+    private static final int REG_B = 0, REG_C = 1, REG_D = 2, REG_E = 3;
+    private static final int REG_H = 4, REG_L = 5, REG_F = 6, REG_A = 7;
+    
+    //Encoding of the pairs of registers in the opcodes, AF also means SP
+    private static final int REG16_AF_SP = 0b11;
 
-    //Represents the different registers in the CPU
-    private enum Reg implements Register {
-        A, F, B, C, D, E, H, L
+    //Executes an instruction on the given CPU
+    @FunctionalInterface
+    private interface Handler {
+        void execute(Cpu cpu);
     }
-    
-    //Represents the pairs of above registers
-    private enum Reg16 implements Register {
-        AF, BC, DE, HL
+
+    //Operations whose flags can be computed after their execution
+    private enum DeferredFlags {
+        NONE, ADD, SUB, AND, OR, XOR
     }
 
     //Used to indicated which Flag must be taken after an operation
@@ -75,6 +133,17 @@ public final class Cpu implements Component, Clocked {
     public enum Interrupt implements Bit {
         VBLANK, LCD_STAT, TIMER, SERIAL, JOYPAD
     }
+    
+    /**
+     * The ways the CPU can execute the instructions. With INSTRUCTIONS, one
+     * instruction is executed per call to "cycle". With BLOCKS, the
+     * instructions that follow are executed in the same call, as long as
+     * they don't depend on the exact cycle on which they access the memory,
+     * and the busy-wait loops are skipped.
+     */
+    public enum ExecutionMode {
+        INSTRUCTIONS, BLOCKS
+    }
 
 /*** Public functions ****/ 
     
@@ -83,7 +152,7 @@ public final class Cpu implements Component, Clocked {
      * This CPU is controlled by the method "cycle".
      */
     public Cpu() {
-        regFile = new RegisterFile<>(Reg.values());
+        registers = new int[REG_A + 1];
         PC = 0;
         SP = 0;
 
@@ -92,39 +161,88 @@ public final class Cpu implements Component, Clocked {
         IF = 0;
 
         highRam = new Ram(AddressMap.HIGH_RAM_SIZE);
+        
+        decodedInstructions = new int[AddressMap.REG_IE + 1];
+        decodedGenerations  = new int[AddressMap.CARTRIDGE_ROM_END];
+        romGeneration = 0;
+        
+        executionMode = ExecutionMode.INSTRUCTIONS;
+        deferredFlags = DeferredFlags.NONE;
+    }
+    
+    /**
+     * Set the way the CPU executes the instructions.
+     * 
+     * @param mode
+     *            the new execution mode, not null
+     * @throws NullPointerException
+     *             if the given mode is null
+     */
+    public void setExecutionMode(ExecutionMode mode) {
+        executionMode = Objects.requireNonNull(mode);
     }
-
     
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Clocked#cycle(long)
      */
     @Override
     public void cycle(long cycle) {
-        if (cycle == nextNonIdleCycle || (nextNonIdleCycle == Long.MAX_VALUE && detectInterrupts() != null)) {
-            newPC = PC_NOT_CHANGED;
-            Opcode opcode = null;
+        cycle(cycle, cycle + 1);
+    }
+    
+    /**
+     * Execute the given cycle. In the BLOCKS execution mode, the instructions
+     * that start before "limit" are also executed, as long as they only write
+     * in the cartridge, the work RAM or the high RAM, don't read the timer and
+     * no interrupt must be handled. The iterations of a loop that doesn't write
+     * in memory and comes back to the same state are skipped up to "limit", or
+     * up to the change of a value it read, as given by readValueChangesAt. The
+     * caller must ensure that no other clocked component has something to do
+     * before "limit", except catching up on the elapsed cycles when it is
+     * accessed.
+     * 
+     * @param cycle
+     *            the cycle to execute
+     * @param limit
+     *            the first cycle on which no instruction may be started
+     */
+    public void cycle(long cycle, long limit) {
+        lastCycle = cycle;
+        if (cycle == nextNonIdleCycle || (isHalted() && hasPendingInterrupt())) {
             
             //Handle interruptions and end this cycle if needed
             if(handleInterrupts(cycle)) return;
             
-            if (bus.read(PC) == OPCODE_PREFIX)
-                opcode = PREFIXED_OPCODE_TABLE[bus.read(PC + 1)];
-            else
-                opcode = DIRECT_OPCODE_TABLE[bus.read(PC)];
+            Opcode opcode = fetch();
+            boolean inBlock = executionMode == ExecutionMode.BLOCKS && canRunAhead(opcode);
+            execute(opcode);
             
-            dispatch(opcode);
-
-            if (nextNonIdleCycle != Long.MAX_VALUE) 
-                nextNonIdleCycle += opcode.cycles;
-            
-            if (newPC == PC_NOT_CHANGED)
-                PC = Bits.clip(16, PC + opcode.totalBytes);
-            else
-                PC = newPC;
+            while (inBlock && nextNonIdleCycle < limit && isCacheable(PC) && !hasPendingInterrupt()) {
+                opcode = fetch();
+                inBlock = canRunAhead(opcode);
+                if (inBlock) {
+                    int previousPC = PC;
+                    execute(opcode);
+                    if (PC < previousPC && previousPC - PC <= MAX_BUSY_WAIT_LOOP_SIZE && isJump(opcode))
+                        skipBusyWaitLoop(cycle, limit);
+                }
+            }
         }
         // else we have nothing to do during this cycle
     }
     
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Clocked#nextEventCycle(long)
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        // A halted CPU is idle until the timer, the LCD or the joypad request an interrupt
+        if (isHalted() && hasPendingInterrupt())
+            return cycle + 1;
+        else
+            return Math.max(cycle + 1, nextNonIdleCycle);
+    }
+    
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Component#read(int)
      */
@@ -156,7 +274,26 @@ public final class Cpu implements Component, Clocked {
             IF = data;
         else if (address >= AddressMap.HIGH_RAM_START && address < AddressMap.HIGH_RAM_END)
             highRam.write(address - AddressMap.HIGH_RAM_START, data);
-        //else nothing to do
+        
+        // The CPU also watches the writes that can change the decoded instructions
+        if (address < AddressMap.CARTRIDGE_ROM_END || address == AddressMap.REG_BOOT_ROM_DISABLE)
+            romGeneration++; // The MBC may have switched banks
+        else if (address >= AddressMap.ECHO_RAM_START && address < AddressMap.ECHO_RAM_END)
+            invalidateDecodedInstructions(address - ECHO_RAM_OFFSET);
+        else if (isCacheable(address))
+            invalidateDecodedInstructions(address);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return address == AddressMap.REG_IE
+            || address == AddressMap.REG_IF
+            || address == AddressMap.REG_BOOT_ROM_DISABLE
+            || (address >= AddressMap.ECHO_RAM_START && address < AddressMap.ECHO_RAM_END)
+            || isCacheable(address);
     }
 
     /* (non-Javadoc)
@@ -178,6 +315,43 @@ public final class Cpu implements Component, Clocked {
         IF |= i.mask();
     }
     
+    /**
+     * Tell the processor that an OAM DMA transfer was started by the current
+     * instruction. During the following 160 cycles, the processor can only
+     * reach the high RAM: the other reads return 0xFF and the other writes
+     * are ignored.
+     */
+    public void startDmaTransfer() {
+        dmaEndCycle = nextNonIdleCycle + DMA_DURATION;
+    }
+    
+    /**
+     * Tell the processor that a value read by the current instruction, from a
+     * component that catches up on the elapsed cycles when it is accessed,
+     * stays the same until a given cycle. The busy-wait loops reading it are
+     * only skipped up to that cycle.
+     * 
+     * @param cycle
+     *            the first cycle on which the value read may change
+     */
+    public void readValueChangesAt(long cycle) {
+        readChangeCycle = Math.min(readChangeCycle, cycle);
+    }
+    
+    /**
+     * Returns the cycle on which the current instruction started, on which
+     * its memory accesses are done. The components that only catch up on the
+     * elapsed cycles when they are accessed use it to know up to which cycle
+     * they must run, as the instructions of a block run ahead of the cycle
+     * given to the "cycle" method. While the processor is halted, it is the
+     * last cycle given to the "cycle" method.
+     * 
+     * @return the cycle of the current instruction
+     */
+    public long instructionCycle() {
+        return isHalted() ? lastCycle : nextNonIdleCycle;
+    }
+    
     
 /*** Private functions ****
  * 
@@ -186,351 +360,429 @@ public final class Cpu implements Component, Clocked {
  * as 0xFFFF, this situation never happends in a valid program.
  */
 
-    private void dispatch(Opcode opcode) {
+    // Decode the instruction at PC and store its operands
+    private Opcode fetch() {
+        int instruction = decodedInstruction(PC);
+        operands = Bits.clip(Short.SIZE, instruction);
+        return ALL_OPCODES[(instruction >>> Short.SIZE) - 1];
+    }
+    
+    private void execute(Opcode opcode) {
+        newPC = PC_NOT_CHANGED;
+        
+        HANDLERS[handlerIndex(opcode)].execute(this);
+
+        if (!isHalted())
+            nextNonIdleCycle += opcode.cycles;
+        
+        if (newPC == PC_NOT_CHANGED)
+            PC = Bits.clip(16, PC + opcode.totalBytes);
+        else
+            PC = newPC;
+    }
+
+    // Build the handler of an opcode, with its operands already extracted from the encoding
+    private static Handler buildHandler(Opcode opcode) {
         
         switch (opcode.family) {
-        case NOP: break;
+        case NOP: return cpu -> {};
         
         // From bus/raw to register
         case LD_R8_HLR: {
-            regFile.set(extractReg(opcode, 3), read8AtHl());
-        }break;
+            int r = extractReg(opcode, 3);
+            return cpu -> cpu.registers[r] = cpu.read8AtHl();
+        }
         case LD_A_HLRU: {
-            regFile.set(Reg.A, read8AtHl());
-            setReg16(Reg16.HL, getReg16(Reg16.HL) + extractHlIncrement(opcode));                                                                         
-        }break;
-        case LD_A_N8R: {
-            regFile.set(Reg.A, read8(AddressMap.REGS_START + read8AfterOpcode()));
-        }break;
-        case LD_A_CR: {
-            regFile.set(Reg.A, read8(AddressMap.REGS_START + regFile.get(Reg.C)));
-        }break;
-        case LD_A_N16R: {
-            regFile.set(Reg.A, read8(read16AfterOpcode()));
-        }break;
-        case LD_A_BCR: {
-            regFile.set(Reg.A, read8(getReg16(Reg16.BC)));
-        }break;
-        case LD_A_DER: {
-            regFile.set(Reg.A, read8(getReg16(Reg16.DE)));
-        }break;
+            int increment = extractHlIncrement(opcode);
+            return cpu -> {
+                cpu.registers[REG_A] = cpu.read8AtHl();
+                cpu.setReg16(REG_H, REG_L, cpu.getReg16(REG_H, REG_L) + increment);
+            };
+        }
+        case LD_A_N8R:
+            return cpu -> cpu.registers[REG_A] = cpu.read8(AddressMap.REGS_START + cpu.read8AfterOpcode());
+        case LD_A_CR:
+            return cpu -> cpu.registers[REG_A] = cpu.read8(AddressMap.REGS_START + cpu.registers[REG_C]);
+        case LD_A_N16R:
+            return cpu -> cpu.registers[REG_A] = cpu.read8(cpu.read16AfterOpcode());
+        case LD_A_BCR:
+            return cpu -> cpu.registers[REG_A] = cpu.read8(cpu.getReg16(REG_B, REG_C));
+        case LD_A_DER:
+            return cpu -> cpu.registers[REG_A] = cpu.read8(cpu.getReg16(REG_D, REG_E));
         case LD_R8_N8: {
-            regFile.set(extractReg(opcode, 3), read8AfterOpcode());
-        }break;
+            int r = extractReg(opcode, 3);
+            return cpu -> cpu.registers[r] = cpu.read8AfterOpcode();
+        }
         case LD_R16SP_N16: {
-            setReg16SP(extractReg16(opcode), read16AfterOpcode());
-        }break;
+            int r = extractReg16(opcode);
+            if (r == REG16_AF_SP)
+                return cpu -> cpu.SP = cpu.read16AfterOpcode();
+            int high = highReg(r), low = lowReg(r);
+            return cpu -> cpu.setReg16(high, low, cpu.read16AfterOpcode());
+        }
         case POP_R16: {
-            setReg16(extractReg16(opcode), pop16());
-        }break;
+            int r = extractReg16(opcode);
+            if (r == REG16_AF_SP)
+                return cpu -> cpu.setAF(cpu.pop16());
+            int high = highReg(r), low = lowReg(r);
+            return cpu -> cpu.setReg16(high, low, cpu.pop16());
+        }
 
         // From register to bus
         case LD_HLR_R8: {
-            write8AtHl(regFile.get(extractReg(opcode, 0)));
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.write8AtHl(cpu.registers[r]);
+        }
         case LD_HLRU_A: {
-            write8AtHl(regFile.get(Reg.A));
-            setReg16(Reg16.HL, getReg16(Reg16.HL) + extractHlIncrement(opcode));
-        }break;
-        case LD_N8R_A: {
-            write8(AddressMap.REGS_START + read8AfterOpcode(), getRegAValue());
-        }break;
-        case LD_CR_A: {
-            write8(AddressMap.REGS_START + regFile.get(Reg.C), getRegAValue());
-        }break;
-        case LD_N16R_A: {
-            write8(read16AfterOpcode(), getRegAValue());
-        }break;
-        case LD_BCR_A: {
-            write8(getReg16(Reg16.BC), getRegAValue());
-        }break;
-        case LD_DER_A: {
-            write8(getReg16(Reg16.DE), getRegAValue());
-        }break;
-        case LD_HLR_N8: {
-            write8AtHl(read8AfterOpcode());
-        }break;
-        case LD_N16R_SP: {
-            write16(read16AfterOpcode(), SP);
-        }break;
+            int increment = extractHlIncrement(opcode);
+            return cpu -> {
+                cpu.write8AtHl(cpu.registers[REG_A]);
+                cpu.setReg16(REG_H, REG_L, cpu.getReg16(REG_H, REG_L) + increment);
+            };
+        }
+        case LD_N8R_A:
+            return cpu -> cpu.write8(AddressMap.REGS_START + cpu.read8AfterOpcode(), cpu.getRegAValue());
+        case LD_CR_A:
+            return cpu -> cpu.write8(AddressMap.REGS_START + cpu.registers[REG_C], cpu.getRegAValue());
+        case LD_N16R_A:
+            return cpu -> cpu.write8(cpu.read16AfterOpcode(), cpu.getRegAValue());
+        case LD_BCR_A:
+            return cpu -> cpu.write8(cpu.getReg16(REG_B, REG_C), cpu.getRegAValue());
+        case LD_DER_A:
+            return cpu -> cpu.write8(cpu.getReg16(REG_D, REG_E), cpu.getRegAValue());
+        case LD_HLR_N8:
+            return cpu -> cpu.write8AtHl(cpu.read8AfterOpcode());
+        case LD_N16R_SP:
+            return cpu -> cpu.write16(cpu.read16AfterOpcode(), cpu.SP);
         case PUSH_R16: {
-            push16(getReg16(extractReg16(opcode)));
-        }break;
+            int r = extractReg16(opcode);
+            if (r == REG16_AF_SP)
+                return cpu -> cpu.push16(cpu.getAF());
+            int high = highReg(r), low = lowReg(r);
+            return cpu -> cpu.push16(cpu.getReg16(high, low));
+        }
 
         // From register to register
         case LD_R8_R8: {
-            regFile.set(extractReg(opcode, 3), regFile.get(extractReg(opcode, 0)));
-        }break;
-        case LD_SP_HL: {
-            SP = getReg16(Reg16.HL);
-        }break;
+            int to = extractReg(opcode, 3), from = extractReg(opcode, 0);
+            return cpu -> cpu.registers[to] = cpu.registers[from];
+        }
+        case LD_SP_HL:
+            return cpu -> cpu.SP = cpu.getReg16(REG_H, REG_L);
 
         // Additions
         case ADD_A_R8: {
-            int operation = Alu.add(getRegAValue(), regFile.get(extractReg(opcode, 0)), getCarryValue(opcode));
-            setRegFlags(Reg.A, operation);
-        }break;
+            int r = extractReg(opcode, 0);
+            boolean withCarry = extractCarryUse(opcode);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.ADD, cpu.getRegAValue(), cpu.registers[r], cpu.getCarryValue(withCarry));
+        }
         case ADD_A_N8: {
-            int operation = Alu.add(getRegAValue(), read8AfterOpcode(), getCarryValue(opcode));
-            setRegFlags(Reg.A, operation);
-        }break;
+            boolean withCarry = extractCarryUse(opcode);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.ADD, cpu.getRegAValue(), cpu.read8AfterOpcode(), cpu.getCarryValue(withCarry));
+        }
         case ADD_A_HLR: {
-            int operation = Alu.add(getRegAValue(), read8AtHl(), getCarryValue(opcode));
-            setRegFlags(Reg.A, operation);
-        }break;
+            boolean withCarry = extractCarryUse(opcode);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.ADD, cpu.getRegAValue(), cpu.read8AtHl(), cpu.getCarryValue(withCarry));
+        }
         case INC_R8: {
-            int operation = Alu.add(regFile.get(extractReg(opcode, 3)), 1);
-            setRegFromAlu(extractReg(opcode, 3), operation);
-            combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
-        }break;
-        case INC_HLR: {
-            int operation = Alu.add(read8AtHl(), 1);
-            write8AtHl(Alu.unpackValue(operation));
-            combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
-        }break;
+            int r = extractReg(opcode, 3);
+            return cpu -> {
+                int operation = Alu.add(cpu.registers[r], 1);
+                cpu.setRegFromAlu(r, operation);
+                cpu.combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
+            };
+        }
+        case INC_HLR:
+            return cpu -> {
+                int operation = Alu.add(cpu.read8AtHl(), 1);
+                cpu.write8AtHl(Alu.unpackValue(operation));
+                cpu.combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
+            };
         case INC_R16SP: {
-            int operation = Alu.add16H(getReg16SP(extractReg16(opcode)), 1);
-            setReg16SP(extractReg16(opcode), Alu.unpackValue(operation));
-        }break;
+            int r = extractReg16(opcode);
+            if (r == REG16_AF_SP)
+                return cpu -> cpu.SP = Bits.clip(16, cpu.SP + 1);
+            int high = highReg(r), low = lowReg(r);
+            return cpu -> cpu.setReg16(high, low, cpu.getReg16(high, low) + 1);
+        }
         case ADD_HL_R16SP: {
-            int operation = Alu.add16H(getReg16(Reg16.HL), getReg16SP(extractReg16(opcode)));
-            setReg16SP(Reg16.HL, Alu.unpackValue(operation));
-            combineAluFlags(operation, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
-        }break;
+            int r = extractReg16(opcode);
+            if (r == REG16_AF_SP)
+                return cpu -> cpu.addToHL(cpu.SP);
+            int high = highReg(r), low = lowReg(r);
+            return cpu -> cpu.addToHL(cpu.getReg16(high, low));
+        }
         case LD_HLSP_S8: { // This family contains ADD SP, e8 and LD HL, SP + e8
-            int operation = Alu.add16L(SP, Bits.clip(16, Bits.signExtend8(read8AfterOpcode())));
-            setReg16SP(Bits.test(opcode.encoding, 4) ? Reg16.HL : Reg16.AF, Alu.unpackValue(operation)); // Here Reg16.AF means SP
-            combineAluFlags(operation, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
-        }break;
+            if (Bits.test(opcode.encoding, 4))
+                return cpu -> cpu.setReg16(REG_H, REG_L, cpu.addE8ToSP());
+            else
+                return cpu -> cpu.SP = cpu.addE8ToSP();
+        }
 
         // Subtractions
         case SUB_A_R8: {
-            int operation = Alu.sub(getRegAValue(), regFile.get(extractReg(opcode, 0)), getCarryValue(opcode));
-            setRegFlags(Reg.A, operation);
-        }break;
+            int r = extractReg(opcode, 0);
+            boolean withCarry = extractCarryUse(opcode);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.SUB, cpu.getRegAValue(), cpu.registers[r], cpu.getCarryValue(withCarry));
+        }
         case SUB_A_N8: {
-            int operation = Alu.sub(getRegAValue(), read8AfterOpcode(), getCarryValue(opcode));
-            setRegFlags(Reg.A, operation);
-        }break;
+            boolean withCarry = extractCarryUse(opcode);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.SUB, cpu.getRegAValue(), cpu.read8AfterOpcode(), cpu.getCarryValue(withCarry));
+        }
         case SUB_A_HLR: {
-            int operation = Alu.sub(getRegAValue(), read8AtHl(), getCarryValue(opcode));
-            setRegFlags(Reg.A, operation);
-        }break;
+            boolean withCarry = extractCarryUse(opcode);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.SUB, cpu.getRegAValue(), cpu.read8AtHl(), cpu.getCarryValue(withCarry));
+        }
         case DEC_R8: {
-            int operation = Alu.sub(regFile.get(extractReg(opcode, 3)), 1);
-            setRegFromAlu(extractReg(opcode, 3), operation);
-            combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
-        }break;
-        case DEC_HLR: {
-            int operation = Alu.sub(read8AtHl(), 1);
-            write8AtHl(Alu.unpackValue(operation));
-            combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
-        }break;
+            int r = extractReg(opcode, 3);
+            return cpu -> {
+                int operation = Alu.sub(cpu.registers[r], 1);
+                cpu.setRegFromAlu(r, operation);
+                cpu.combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
+            };
+        }
+        case DEC_HLR:
+            return cpu -> {
+                int operation = Alu.sub(cpu.read8AtHl(), 1);
+                cpu.write8AtHl(Alu.unpackValue(operation));
+                cpu.combineAluFlags(operation, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
+            };
         case CP_A_R8: {
-            int operation = Alu.sub(getRegAValue(), regFile.get(extractReg(opcode, 0)));
-            setFlags(operation);
-        }break;
-        case CP_A_N8: {
-            setFlags(Alu.sub(getRegAValue(), read8AfterOpcode()));
-        }break;
-        case CP_A_HLR: {
-            setFlags(Alu.sub(getRegAValue(), read8AtHl()));
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.deferFlags(DeferredFlags.SUB, cpu.getRegAValue(), cpu.registers[r], false);
+        }
+        case CP_A_N8:
+            return cpu -> cpu.deferFlags(DeferredFlags.SUB, cpu.getRegAValue(), cpu.read8AfterOpcode(), false);
+        case CP_A_HLR:
+            return cpu -> cpu.deferFlags(DeferredFlags.SUB, cpu.getRegAValue(), cpu.read8AtHl(), false);
         case DEC_R16SP: {
-            setReg16SP(extractReg16(opcode), getReg16SP(extractReg16(opcode)) - 1);
-        }break;
+            int r = extractReg16(opcode);
+            if (r == REG16_AF_SP)
+                return cpu -> cpu.SP = Bits.clip(16, cpu.SP - 1);
+            int high = highReg(r), low = lowReg(r);
+            return cpu -> cpu.setReg16(high, low, cpu.getReg16(high, low) - 1);
+        }
 
         // And, or, xor, complement
         case AND_A_R8: {
-            int operation = Alu.and(getRegAValue(), regFile.get(extractReg(opcode, 0)));
-            setRegFlags(Reg.A, operation);
-        }break;
-        case AND_A_N8: {
-            setRegFlags(Reg.A, Alu.and(getRegAValue(), read8AfterOpcode()));
-        }break;
-        case AND_A_HLR: {
-            setRegFlags(Reg.A, Alu.and(getRegAValue(), read8AtHl()));
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.AND, cpu.getRegAValue(), cpu.registers[r], false);
+        }
+        case AND_A_N8:
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.AND, cpu.getRegAValue(), cpu.read8AfterOpcode(), false);
+        case AND_A_HLR:
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.AND, cpu.getRegAValue(), cpu.read8AtHl(), false);
         case OR_A_R8: {
-            int operation = Alu.or(getRegAValue(), regFile.get(extractReg(opcode, 0)));
-            setRegFlags(Reg.A, operation);
-        }break;
-        case OR_A_N8: {
-            setRegFlags(Reg.A, Alu.or(getRegAValue(), read8AfterOpcode()));
-        }break;
-        case OR_A_HLR: {
-            setRegFlags(Reg.A, Alu.or(getRegAValue(), read8AtHl()));
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.OR, cpu.getRegAValue(), cpu.registers[r], false);
+        }
+        case OR_A_N8:
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.OR, cpu.getRegAValue(), cpu.read8AfterOpcode(), false);
+        case OR_A_HLR:
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.OR, cpu.getRegAValue(), cpu.read8AtHl(), false);
         case XOR_A_R8: {
-            int operation = Alu.xor(getRegAValue(), regFile.get(extractReg(opcode, 0)));
-            setRegFlags(Reg.A, operation);
-        }break;
-        case XOR_A_N8: {
-            setRegFlags(Reg.A, Alu.xor(getRegAValue(), read8AfterOpcode()));
-        }break;
-        case XOR_A_HLR: {
-            setRegFlags(Reg.A, Alu.xor(getRegAValue(), read8AtHl()));
-        }break;
-        case CPL: {
-            regFile.set(Reg.A, Bits.complement8(regFile.get(Reg.A)));
-            combineAluFlags(0, FlagSrc.CPU, FlagSrc.V1, FlagSrc.V1, FlagSrc.CPU);
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.XOR, cpu.getRegAValue(), cpu.registers[r], false);
+        }
+        case XOR_A_N8:
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.XOR, cpu.getRegAValue(), cpu.read8AfterOpcode(), false);
+        case XOR_A_HLR:
+            return cpu -> cpu.registers[REG_A] = cpu.deferFlags(DeferredFlags.XOR, cpu.getRegAValue(), cpu.read8AtHl(), false);
+        case CPL:
+            return cpu -> {
+                cpu.registers[REG_A] = Bits.complement8(cpu.registers[REG_A]);
+                cpu.combineAluFlags(0, FlagSrc.CPU, FlagSrc.V1, FlagSrc.V1, FlagSrc.CPU);
+            };
 
         // Rotations, shifts
         case ROTCA: {
-            int operation = Alu.rotate(extractRotDir(opcode), getRegAValue());
-            setRegFromAlu(Reg.A, operation);
-            combineAluFlags(operation, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0,FlagSrc.ALU);
-        }break;
+            Alu.RotDir dir = extractRotDir(opcode);
+            return cpu -> {
+                int operation = Alu.rotate(dir, cpu.getRegAValue());
+                cpu.setRegFromAlu(REG_A, operation);
+                cpu.combineAluFlags(operation, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+            };
+        }
         case ROTA: {
-            int operation = Alu.rotate(extractRotDir(opcode), getRegAValue(), Bits.test(regFile.get(Reg.F), Flag.C.index()));
-            setRegFromAlu(Reg.A, operation);
-            combineAluFlags(operation, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
-        }break;
+            Alu.RotDir dir = extractRotDir(opcode);
+            return cpu -> {
+                int operation = Alu.rotate(dir, cpu.getRegAValue(), cpu.getFlag(Flag.C));
+                cpu.setRegFromAlu(REG_A, operation);
+                cpu.combineAluFlags(operation, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+            };
+        }
         case ROTC_R8: {
-            int operation = Alu.rotate(extractRotDir(opcode), regFile.get(extractReg(opcode, 0)));
-            setRegFlags(extractReg(opcode, 0), operation);
-        }break;
+            Alu.RotDir dir = extractRotDir(opcode);
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.setRegFlags(r, Alu.rotate(dir, cpu.registers[r]));
+        }
         case ROT_R8: {
-            int operation = Alu.rotate(extractRotDir(opcode), regFile.get(extractReg(opcode, 0)), Bits.test(regFile.get(Reg.F), Flag.C.index()));
-            setRegFlags(extractReg(opcode, 0), operation);
-        }break;
+            Alu.RotDir dir = extractRotDir(opcode);
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.setRegFlags(r, Alu.rotate(dir, cpu.registers[r], cpu.getFlag(Flag.C)));
+        }
         case ROTC_HLR: {
-            int operation = Alu.rotate(extractRotDir(opcode), read8AtHl());
-            write8AtHlAndSetFlags(operation);
-        }break;
+            Alu.RotDir dir = extractRotDir(opcode);
+            return cpu -> cpu.write8AtHlAndSetFlags(Alu.rotate(dir, cpu.read8AtHl()));
+        }
         case ROT_HLR: {
-            int operation = Alu.rotate(extractRotDir(opcode), read8AtHl(), Bits.test(regFile.get(Reg.F), Flag.C.index()));
-            write8AtHlAndSetFlags(operation);
-        }break;
+            Alu.RotDir dir = extractRotDir(opcode);
+            return cpu -> cpu.write8AtHlAndSetFlags(Alu.rotate(dir, cpu.read8AtHl(), cpu.getFlag(Flag.C)));
+        }
         case SWAP_R8: {
-            int operation = Alu.swap(regFile.get(extractReg(opcode, 0)));
-            setRegFlags(extractReg(opcode, 0), operation);
-        }break;
-        case SWAP_HLR: {
-            write8AtHlAndSetFlags(Alu.swap(read8AtHl()));
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.setRegFlags(r, Alu.swap(cpu.registers[r]));
+        }
+        case SWAP_HLR:
+            return cpu -> cpu.write8AtHlAndSetFlags(Alu.swap(cpu.read8AtHl()));
         case SLA_R8: {
-            int operation = Alu.shiftLeft(regFile.get(extractReg(opcode, 0)));
-            setRegFlags(extractReg(opcode, 0), operation);
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.setRegFlags(r, Alu.shiftLeft(cpu.registers[r]));
+        }
         case SRA_R8: {
-            int operation = Alu.shiftRightA(regFile.get(extractReg(opcode, 0)));
-            setRegFlags(extractReg(opcode, 0), operation);
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.setRegFlags(r, Alu.shiftRightA(cpu.registers[r]));
+        }
         case SRL_R8: {
-            int operation = Alu.shiftRightL(regFile.get(extractReg(opcode, 0)));
-            setRegFlags(extractReg(opcode, 0), operation);
-        }break;
-        case SLA_HLR: {
-            write8AtHlAndSetFlags(Alu.shiftLeft(read8AtHl()));
-        } break;
-        case SRA_HLR: {
-            write8AtHlAndSetFlags(Alu.shiftRightA(read8AtHl()));
-        } break;
-        case SRL_HLR: {
-            write8AtHlAndSetFlags(Alu.shiftRightL(read8AtHl()));
-        }break;
+            int r = extractReg(opcode, 0);
+            return cpu -> cpu.setRegFlags(r, Alu.shiftRightL(cpu.registers[r]));
+        }
+        case SLA_HLR:
+            return cpu -> cpu.write8AtHlAndSetFlags(Alu.shiftLeft(cpu.read8AtHl()));
+        case SRA_HLR:
+            return cpu -> cpu.write8AtHlAndSetFlags(Alu.shiftRightA(cpu.read8AtHl()));
+        case SRL_HLR:
+            return cpu -> cpu.write8AtHlAndSetFlags(Alu.shiftRightL(cpu.read8AtHl()));
 
         // Tests and Sets on bits
         case BIT_U3_R8: {
-            boolean res = Bits.test(regFile.get(extractReg(opcode, 0)), getBitIndex(opcode));
-            combineAluFlags(0, res ? FlagSrc.V0 : FlagSrc.V1, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
-        }break;
+            int r = extractReg(opcode, 0);
+            int index = getBitIndex(opcode);
+            return cpu -> {
+                boolean res = Bits.test(cpu.registers[r], index);
+                cpu.combineAluFlags(0, res ? FlagSrc.V0 : FlagSrc.V1, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
+            };
+        }
         case BIT_U3_HLR: {
-            boolean res = Bits.test(read8AtHl(), getBitIndex(opcode));
-            combineAluFlags(0, res ? FlagSrc.V0 : FlagSrc.V1, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
-        }break;
+            int index = getBitIndex(opcode);
+            return cpu -> {
+                boolean res = Bits.test(cpu.read8AtHl(), index);
+                cpu.combineAluFlags(0, res ? FlagSrc.V0 : FlagSrc.V1, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
+            };
+        }
         case CHG_U3_R8: {
-            int operation = 0;
+            int r = extractReg(opcode, 0);
+            int mask = 1 << getBitIndex(opcode);
             if (Bits.test(opcode.encoding, 6)) 
-                operation = Alu.or( regFile.get(extractReg(opcode, 0)), 1 << getBitIndex(opcode));
+                return cpu -> cpu.setRegFromAlu(r, Alu.or(cpu.registers[r], mask));
             else 
-                operation = Alu.and(regFile.get(extractReg(opcode, 0)), Bits.clip(8, ~(1 << getBitIndex(opcode))));
-            
-            setRegFromAlu(extractReg(opcode, 0), operation);
-        }break;
+                return cpu -> cpu.setRegFromAlu(r, Alu.and(cpu.registers[r], Bits.clip(8, ~mask)));
+        }
         case CHG_U3_HLR: {
-            int operation = 0;
+            int mask = 1 << getBitIndex(opcode);
             if (Bits.test(opcode.encoding, 6)) 
-                operation = Alu.or(read8AtHl(), 1 << getBitIndex(opcode));
+                return cpu -> cpu.write8AtHl(Alu.unpackValue(Alu.or(cpu.read8AtHl(), mask)));
             else 
-                operation = Alu.and(read8AtHl(), Bits.clip(8, ~(1 << getBitIndex(opcode))));
-            
-            write8AtHl(Alu.unpackValue(operation));
-        }break;
+                return cpu -> cpu.write8AtHl(Alu.unpackValue(Alu.and(cpu.read8AtHl(), Bits.clip(8, ~mask))));
+        }
 
         // Misc. ALU
-        case DAA: {
-            int valueF = regFile.get(Reg.F);
-            int operation = Alu.bcdAdjust(getRegAValue(), 
-                                          Bits.test(valueF, Flag.N.index()),
-                                          Bits.test(valueF, Flag.H.index()), 
-                                          Bits.test(valueF, Flag.C.index()));
-            setRegFromAlu(Reg.A, operation);
-            combineAluFlags(operation, FlagSrc.ALU, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU);
-        }break;
+        case DAA:
+            return cpu -> {
+                int operation = Alu.bcdAdjust(cpu.getRegAValue(), 
+                                              cpu.getFlag(Flag.N),
+                                              cpu.getFlag(Flag.H), 
+                                              cpu.getFlag(Flag.C));
+                cpu.setRegFromAlu(REG_A, operation);
+                cpu.combineAluFlags(operation, FlagSrc.ALU, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU);
+            };
         case SCCF: {
-            combineAluFlags(0, FlagSrc.CPU, FlagSrc.V0, FlagSrc.V0, getCarryValue(opcode) ? FlagSrc.V0 : FlagSrc.V1);
-        }break;
+            boolean complement = extractCarryUse(opcode);
+            return cpu -> cpu.combineAluFlags(0, FlagSrc.CPU, FlagSrc.V0, FlagSrc.V0, 
+                                              cpu.getCarryValue(complement) ? FlagSrc.V0 : FlagSrc.V1);
+        }
 
         // Jumps
-        case JP_HL: {
-            newPC = getReg16(Reg16.HL);
-        }break;
-        case JP_N16: {
-            newPC = read16AfterOpcode();
-        }break;
+        case JP_HL:
+            return cpu -> cpu.newPC = cpu.getReg16(REG_H, REG_L);
+        case JP_N16:
+            return cpu -> cpu.newPC = cpu.read16AfterOpcode();
         case JP_CC_N16: {
-            if (extractResultOfCondition(opcode)) newPC = read16AfterOpcode();
-        }break;
+            int condition = extractCondition(opcode), additionalCycles = opcode.additionalCycles;
+            return cpu -> {
+                if (cpu.testCondition(condition, additionalCycles)) cpu.newPC = cpu.read16AfterOpcode();
+            };
+        }
         case JR_E8: {
-            newPC = Bits.clip(16, PC + opcode.totalBytes + Bits.signExtend8(read8AfterOpcode()));
-        }break;
+            int size = opcode.totalBytes;
+            return cpu -> cpu.newPC = Bits.clip(16, cpu.PC + size + Bits.signExtend8(cpu.read8AfterOpcode()));
+        }
         case JR_CC_E8: {
-            if (extractResultOfCondition(opcode))
-                newPC = Bits.clip(16, PC + opcode.totalBytes + Bits.signExtend8(read8AfterOpcode()));
-        }break;
+            int condition = extractCondition(opcode), additionalCycles = opcode.additionalCycles;
+            int size = opcode.totalBytes;
+            return cpu -> {
+                if (cpu.testCondition(condition, additionalCycles))
+                    cpu.newPC = Bits.clip(16, cpu.PC + size + Bits.signExtend8(cpu.read8AfterOpcode()));
+            };
+        }
 
         // Calls and returns
         case CALL_N16: {
-            push16(PC + opcode.totalBytes);
-            newPC = read16AfterOpcode();
-        }break;
+            int size = opcode.totalBytes;
+            return cpu -> {
+                cpu.push16(cpu.PC + size);
+                cpu.newPC = cpu.read16AfterOpcode();
+            };
+        }
         case CALL_CC_N16: {
-            if (extractResultOfCondition(opcode)) {
-                push16(PC + opcode.totalBytes);
-                newPC = read16AfterOpcode();
-            }
-        }break;
+            int condition = extractCondition(opcode), additionalCycles = opcode.additionalCycles;
+            int size = opcode.totalBytes;
+            return cpu -> {
+                if (cpu.testCondition(condition, additionalCycles)) {
+                    cpu.push16(cpu.PC + size);
+                    cpu.newPC = cpu.read16AfterOpcode();
+                }
+            };
+        }
         case RST_U3: {
-            push16(PC + opcode.totalBytes);
-            newPC = AddressMap.RESETS[Bits.extract(opcode.encoding, 3, 3)];
-        }break;
-        case RET: {
-            newPC = pop16();
-        }break;
+            int size = opcode.totalBytes;
+            int address = AddressMap.RESETS[Bits.extract(opcode.encoding, 3, 3)];
+            return cpu -> {
+                cpu.push16(cpu.PC + size);
+                cpu.newPC = address;
+            };
+        }
+        case RET:
+            return cpu -> cpu.newPC = cpu.pop16();
         case RET_CC: {
-            if (extractResultOfCondition(opcode)) newPC = pop16();
-        }break;
+            int condition = extractCondition(opcode), additionalCycles = opcode.additionalCycles;
+            return cpu -> {
+                if (cpu.testCondition(condition, additionalCycles)) cpu.newPC = cpu.pop16();
+            };
+        }
 
         // Interruptions
         case EDI: {
-            IME = Bits.test(opcode.encoding, 3);
-        }break;
-        case RETI: {
-            IME = true;
-            newPC = pop16();
-        }break;
+            boolean enable = Bits.test(opcode.encoding, 3);
+            return cpu -> cpu.IME = enable;
+        }
+        case RETI:
+            return cpu -> {
+                cpu.IME = true;
+                cpu.newPC = cpu.pop16();
+            };
 
         // Misc control
-        case HALT: {
-            nextNonIdleCycle = Long.MAX_VALUE;
-        }break;
+        case HALT:
+            return cpu -> cpu.nextNonIdleCycle = Long.MAX_VALUE;
         case STOP:
-            throw new Error("STOP is not implemented");
+            return cpu -> {
+                throw new Error("STOP is not implemented");
+            };
         default:
-            throw new NullPointerException();
+            return cpu -> {
+                throw new NullPointerException();
+            };
         }
     }
 
@@ -538,15 +790,15 @@ public final class Cpu implements Component, Clocked {
     /*********** Read / Write *********/
     
     private int read8(int address) {
-        return bus.read(address);
+        return isReachable(address) ? bus.read(address) : DMA_READ_VALUE;
     }
 
     private int read8AtHl() {
-        return read8(getReg16(Reg16.HL));
+        return read8(getReg16(REG_H, REG_L));
     }
 
     private int read8AfterOpcode() {
-        return bus.read(PC + 1);
+        return Bits.clip(Byte.SIZE, operands);
     }
 
     private int read16(int address) {
@@ -554,20 +806,28 @@ public final class Cpu implements Component, Clocked {
     }
 
     private int read16AfterOpcode() {
-        return Bits.make16(read8(PC + 2), read8(PC + 1));
+        return operands;
     }
 
     private void write8(int address, int v) {
-        bus.write(address, v);
+        if (isReachable(address))
+            bus.write(address, v);
+        wroteMemory = true;
     }
 
     private void write16(int address, int v) {
-        bus.write(address, Bits.clip(8, v));
-        bus.write(address + 1, Bits.clip(8, v >> 8));
+        write8(address, Bits.clip(8, v));
+        write8(address + 1, Bits.clip(8, v >> 8));
     }
 
     private void write8AtHl(int v) {
-        bus.write(getReg16(Reg16.HL), v);
+        write8(getReg16(REG_H, REG_L), v);
+    }
+
+    // Only the high RAM is reachable during a DMA transfer
+    private boolean isReachable(int address) {
+        return nextNonIdleCycle >= dmaEndCycle
+            || (address >= AddressMap.HIGH_RAM_START && address < AddressMap.HIGH_RAM_END);
     }
 
     private void push16(int v) {
@@ -581,108 +841,224 @@ public final class Cpu implements Component, Clocked {
         return ret;
     }
 
-    /*********** 16 bits Registers Functions *********/
-    private int getReg16(Reg16 r) {
-        switch (r) {
-            case AF: return ((regFile.get(Reg.A) << 8) | regFile.get(Reg.F));
-            case BC: return ((regFile.get(Reg.B) << 8) | regFile.get(Reg.C));
-            case DE: return ((regFile.get(Reg.D) << 8) | regFile.get(Reg.E));
-            case HL: return ((regFile.get(Reg.H) << 8) | regFile.get(Reg.L));
+    /*********** Decoded instructions *********/
+    
+    private int decodedInstruction(int address) {
+        int instruction = decodedInstructions[address];
+        if (instruction != NOT_DECODED 
+                && (address >= AddressMap.CARTRIDGE_ROM_END || decodedGenerations[address] == romGeneration))
+            return instruction;
+        
+        Opcode opcode = null;
+        if (bus.read(address) == OPCODE_PREFIX)
+            opcode = PREFIXED_OPCODE_TABLE[bus.read(address + 1)];
+        else
+            opcode = DIRECT_OPCODE_TABLE[bus.read(address)];
+        
+        int operands = 0;
+        if (opcode.totalBytes == 2)
+            operands = bus.read(address + 1);
+        else if (opcode.totalBytes == MAX_INSTRUCTION_SIZE)
+            operands = Bits.make16(bus.read(address + 2), bus.read(address + 1));
+        instruction = (opcode.ordinal() + 1) << Short.SIZE | operands;
+        
+        if (isCacheable(address) && isCacheable(address + opcode.totalBytes - 1)) {
+            decodedInstructions[address] = instruction;
+            if (address < AddressMap.CARTRIDGE_ROM_END)
+                decodedGenerations[address] = romGeneration;
         }
-        throw new NullPointerException();
+        return instruction;
+    }
+    
+    private void invalidateDecodedInstructions(int address) {
+        // All the instructions that may contain the byte at "address"
+        for (int i = 0; i < MAX_INSTRUCTION_SIZE && address - i >= 0; i++)
+            decodedInstructions[address - i] = NOT_DECODED;
+    }
+    
+    /*********** Blocks and busy-wait loops *********/
+    
+    // True if the instruction can be executed ahead of the other components
+    private boolean canRunAhead(Opcode opcode) {
+        switch (opcode.family) {
+        case LD_R8_HLR: case LD_A_HLRU: case ADD_A_HLR: case SUB_A_HLR: case CP_A_HLR:
+        case AND_A_HLR: case OR_A_HLR: case XOR_A_HLR: case BIT_U3_HLR:
+            return isReadableAhead(getReg16(REG_H, REG_L));
+        case LD_HLR_R8: case LD_HLRU_A: case LD_HLR_N8: case INC_HLR: case DEC_HLR:
+        case ROTC_HLR: case ROT_HLR: case SWAP_HLR: case SLA_HLR: case SRA_HLR: case SRL_HLR: case CHG_U3_HLR:
+            return isUnclocked(getReg16(REG_H, REG_L));
+        case LD_A_N8R:
+            return isReadableAhead(AddressMap.REGS_START + read8AfterOpcode());
+        case LD_N8R_A:
+            return isUnclocked(AddressMap.REGS_START + read8AfterOpcode());
+        case LD_A_CR:
+            return isReadableAhead(AddressMap.REGS_START + registers[REG_C]);
+        case LD_CR_A:
+            return isUnclocked(AddressMap.REGS_START + registers[REG_C]);
+        case LD_A_N16R:
+            return isReadableAhead(read16AfterOpcode());
+        case LD_N16R_A:
+            return isUnclocked(read16AfterOpcode());
+        case LD_N16R_SP:
+            return isUnclocked(read16AfterOpcode()) && isUnclocked(Bits.clip(16, read16AfterOpcode() + 1));
+        case LD_A_BCR:
+            return isReadableAhead(getReg16(REG_B, REG_C));
+        case LD_BCR_A:
+            return isUnclocked(getReg16(REG_B, REG_C));
+        case LD_A_DER:
+            return isReadableAhead(getReg16(REG_D, REG_E));
+        case LD_DER_A:
+            return isUnclocked(getReg16(REG_D, REG_E));
+        case PUSH_R16: case CALL_N16: case CALL_CC_N16: case RST_U3:
+            return isUnclocked(Bits.clip(16, SP - 2)) && isUnclocked(Bits.clip(16, SP - 1));
+        case POP_R16: case RET: case RET_CC: case RETI:
+            return isUnclocked(SP) && isUnclocked(Bits.clip(16, SP + 1));
+        case HALT: case STOP:
+            return false;
+        default:
+            return true;
+        }
+    }
+    
+    // The cartridge and the RAMs are not clocked, so they can be accessed at any cycle
+    private static boolean isUnclocked(int address) {
+        return address < AddressMap.VIDEO_RAM_START
+            || (address >= AddressMap.CARTRIDGE_RAM_START && address < AddressMap.ECHO_RAM_END)
+            || (address >= AddressMap.HIGH_RAM_START && address < AddressMap.HIGH_RAM_END);
+    }
+    
+    // The LCD controller catches up on the elapsed cycles when it is read,
+    // while the counters of the timer are only caught up on its events
+    private static boolean isReadableAhead(int address) {
+        return isUnclocked(address)
+            || isLcdAddress(address)
+            || address == AddressMap.REG_P1
+            || address == AddressMap.REG_IF
+            || address == AddressMap.REG_IE;
+    }
+    
+    private static boolean isLcdAddress(int address) {
+        return (address >= AddressMap.VIDEO_RAM_START && address < AddressMap.VIDEO_RAM_END)
+            || (address >= AddressMap.OAM_START && address < AddressMap.OAM_END)
+            || (address >= AddressMap.REGS_LCDC_START && address < AddressMap.REGS_LCDC_END);
+    }
+    
+    private static boolean isJump(Opcode opcode) {
+        switch (opcode.family) {
+        case JP_HL: case JP_N16: case JP_CC_N16: case JR_E8: case JR_CC_E8:
+            return true;
+        default:
+            return false;
+        }
+    }
+    
+    // Called after each backward jump executed in a block. If the last iteration
+    // of the loop started in this block, didn't write in memory and ended in
+    // the state it started from, the following iterations will do exactly the
+    // same until another component changes something, on "limit" at the
+    // earliest, or until a value it read changes
+    private void skipBusyWaitLoop(long cycle, long limit) {
+        long skipLimit = Math.min(limit, readChangeCycle);
+        long state = 0;
+        flags(); // Materializes the deferred flags in F
+        for (int r : registers)
+            state = state << Byte.SIZE | r;
+        int stack = SP | (IME ? 1 << Short.SIZE : 0);
+        
+        if (PC == loopAddress && loopCycle >= cycle && !wroteMemory
+                && state == loopRegisters && stack == loopStack && nextNonIdleCycle < skipLimit) {
+            long iterationCycles = nextNonIdleCycle - loopCycle;
+            nextNonIdleCycle += (skipLimit - nextNonIdleCycle) / iterationCycles * iterationCycles;
+        }
+        
+        loopAddress = PC;
+        loopCycle = nextNonIdleCycle;
+        loopRegisters = state;
+        loopStack = stack;
+        wroteMemory = false;
+        readChangeCycle = Long.MAX_VALUE;
+    }
+    
+    // Only the instructions in the cartridge ROM, the work RAM and the high RAM are cached
+    private static boolean isCacheable(int address) {
+        return address < AddressMap.CARTRIDGE_ROM_END
+            || (address >= AddressMap.WORK_RAM_START && address < AddressMap.WORK_RAM_END)
+            || (address >= AddressMap.HIGH_RAM_START && address < AddressMap.HIGH_RAM_END);
     }
 
-    private int getReg16SP(Reg16 r) {
-        if (r == Reg16.AF) return SP;
-        else return getReg16(r);
+    /*********** 16 bits Registers Functions *********/
+    private int getReg16(int high, int low) {
+        return (registers[high] << 8) | registers[low];
     }
 
-    private void setReg16(Reg16 r, int newV) {
-        
-        int low  = Bits.clip(8, newV);
-        int high = Bits.clip(8, newV >> 8);
+    private void setReg16(int high, int low, int newV) {
+        registers[high] = Bits.clip(8, newV >> 8);
+        registers[low]  = Bits.clip(8, newV);
+    }
 
-        switch (r) {
-        case AF:
-            regFile.set(Reg.A, high);
-            regFile.set(Reg.F, low & 0b1111_0000); // The 4 LSB must be 0
-            break;
-        case BC:
-            regFile.set(Reg.B, high);
-            regFile.set(Reg.C, low);
-            break;
-        case DE:
-            regFile.set(Reg.D, high);
-            regFile.set(Reg.E, low);
-            break;
-        case HL:
-            regFile.set(Reg.H, high);
-            regFile.set(Reg.L, low);
-            break;
-        default:
-            throw new NullPointerException();
-        }
+    private int getAF() {
+        return (registers[REG_A] << 8) | flags();
     }
 
-    private void setReg16SP(Reg16 r, int newV) {
-        newV = Bits.clip(16, newV);
-        if (r == Reg16.AF) SP = newV;
-        else setReg16(r, newV);
+    private void setAF(int newV) {
+        registers[REG_A] = Bits.clip(8, newV >> 8);
+        registers[REG_F] = newV & 0b1111_0000; // The 4 LSB must be 0
+        deferredFlags = DeferredFlags.NONE;
+    }
+
+    // Indices of the registers of a pair other than AF
+    private static int highReg(int reg16) {
+        return 2 * reg16;
+    }
+
+    private static int lowReg(int reg16) {
+        return 2 * reg16 + 1;
     }
 
-   
     /*********** Extraction Functions ********/
    
-    private Reg extractReg(Opcode opcode, int startBit) {
-        switch (Bits.extract(opcode.encoding, startBit, 3)) {
-            case 0b000: return Reg.B;
-            case 0b001: return Reg.C;
-            case 0b010: return Reg.D;
-            case 0b011: return Reg.E;
-            case 0b100: return Reg.H;
-            case 0b101: return Reg.L;
-            case 0b110: return null; //Unvalid case that will create an error
-            case 0b111: return Reg.A;
-        }
-        throw new NullPointerException();
+    private static int extractReg(Opcode opcode, int startBit) {
+        return Bits.extract(opcode.encoding, startBit, 3);
     }
 
-    private Reg16 extractReg16(Opcode opcode) {
-        switch (Bits.extract(opcode.encoding, 4, 2)) {
-            case 0b00: return Reg16.BC;
-            case 0b01: return Reg16.DE;
-            case 0b10: return Reg16.HL;
-            case 0b11: return Reg16.AF;
-        }
-        throw new NullPointerException();
+    private static int extractReg16(Opcode opcode) {
+        return Bits.extract(opcode.encoding, 4, 2);
     }
 
-    private int extractHlIncrement(Opcode opcode) {
+    private static int extractHlIncrement(Opcode opcode) {
         return Bits.test(opcode.encoding, 4) ? -1 : 1;
     }
 
-    private Alu.RotDir extractRotDir(Opcode opcode) {
+    private static Alu.RotDir extractRotDir(Opcode opcode) {
         if (Bits.test(opcode.encoding, 3))
             return Alu.RotDir.RIGHT;
         else
             return Alu.RotDir.LEFT;
     }
 
-    private int getBitIndex(Opcode opcode) {
+    private static int getBitIndex(Opcode opcode) {
         return Bits.extract(opcode.encoding, 3, 3);
     }
 
-    private boolean getCarryValue(Opcode opcode) {
-        return (Bits.test(opcode.encoding, 3) && Bits.test(regFile.get(Reg.F), Alu.Flag.C.index()));
+    private static boolean extractCarryUse(Opcode opcode) {
+        return Bits.test(opcode.encoding, 3);
+    }
+
+    private static int extractCondition(Opcode opcode) {
+        return Bits.extract(opcode.encoding, 3, 2);
+    }
+
+    private boolean getCarryValue(boolean withCarry) {
+        return (withCarry && getFlag(Flag.C));
     }
 
     private int getRegAValue() {
-        return regFile.get(Reg.A);
+        return registers[REG_A];
     }
 
-    private boolean extractResultOfCondition(Opcode opcode) throws Error {
+    private boolean testCondition(int condition, int additionalCycles) throws Error {
         boolean result = false;
-        switch (Bits.extract(opcode.encoding, 3, 2)) {
+        switch (condition) {
         case 0b00:
             result = !getFlag(Flag.Z); // NZ
             break;
@@ -698,25 +1074,79 @@ public final class Cpu implements Component, Clocked {
         default:
             throw new Error("Unauthorized value for condition");
         }
-        if (result) nextNonIdleCycle += opcode.additionalCycles;
+        if (result) nextNonIdleCycle += additionalCycles;
         return result;
     }
 
     /*********** Alu & Flags Functions *********/
     
-    private void setRegFromAlu(Reg r, int vf) {
-        regFile.set(r, Alu.unpackValue(vf));
+    private void setRegFromAlu(int r, int vf) {
+        registers[r] = Alu.unpackValue(vf);
     }
 
     private void setFlags(int vf) {
-        regFile.set(Reg.F, Alu.unpackFlags(vf));
+        registers[REG_F] = Alu.unpackFlags(vf);
+        deferredFlags = DeferredFlags.NONE;
     }
 
     private boolean getFlag(Flag f) {
-        return Bits.test(regFile.get(Reg.F), f.index());
+        // The conditions only need Z or C, which are cheaper than all the flags
+        if (deferredFlags != DeferredFlags.NONE && f == Flag.Z)
+            return deferredResult() == 0;
+        else if (deferredFlags != DeferredFlags.NONE && f == Flag.C)
+            return deferredCarryOut();
+        else
+            return Bits.test(flags(), f.index());
+    }
+    
+    // Returns the value of F, after having computed the deferred flags if needed
+    private int flags() {
+        if (deferredFlags != DeferredFlags.NONE) {
+            int operation = 0;
+            switch (deferredFlags) {
+            case ADD: operation = Alu.add(deferredL, deferredR, deferredCarry); break;
+            case SUB: operation = Alu.sub(deferredL, deferredR, deferredCarry); break;
+            case AND: operation = Alu.and(deferredL, deferredR); break;
+            case OR:  operation = Alu.or(deferredL, deferredR);  break;
+            case XOR: operation = Alu.xor(deferredL, deferredR); break;
+            default: throw new IllegalStateException();
+            }
+            setFlags(operation);
+        }
+        return registers[REG_F];
+    }
+    
+    // Store the operands of an operation on A, and return its result
+    private int deferFlags(DeferredFlags operation, int l, int r, boolean carry) {
+        deferredFlags = operation;
+        deferredL = l;
+        deferredR = r;
+        deferredCarry = carry;
+        return deferredResult();
+    }
+    
+    private int deferredResult() {
+        int carry = deferredCarry ? 1 : 0;
+        switch (deferredFlags) {
+        case ADD: return Bits.clip(8, deferredL + deferredR + carry);
+        case SUB: return Bits.clip(8, deferredL - deferredR - carry);
+        case AND: return deferredL & deferredR;
+        case OR:  return deferredL | deferredR;
+        case XOR: return deferredL ^ deferredR;
+        default: throw new IllegalStateException();
+        }
+    }
+    
+    private boolean deferredCarryOut() {
+        int carry = deferredCarry ? 1 : 0;
+        switch (deferredFlags) {
+        case ADD: return deferredL + deferredR + carry > 0xFF;
+        case SUB: return deferredL < deferredR + carry;
+        default:  return false;
+        }
     }
 
-    private void setRegFlags(Reg r, int vf) {
+    private void setRegFlags(int r, int vf) {
         setRegFromAlu(r, vf);
         setFlags(vf);
     }
@@ -726,12 +1156,26 @@ public final class Cpu implements Component, Clocked {
         setFlags(vf);
     }
 
+    private void addToHL(int v) {
+        int operation = Alu.add16H(getReg16(REG_H, REG_L), v);
+        setReg16(REG_H, REG_L, Alu.unpackValue(operation));
+        combineAluFlags(operation, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+    }
+
+    // Returns SP + e8, e8 being the signed operand of the instruction
+    private int addE8ToSP() {
+        int operation = Alu.add16L(SP, Bits.clip(16, Bits.signExtend8(read8AfterOpcode())));
+        combineAluFlags(operation, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+        return Alu.unpackValue(operation);
+    }
+
     private void combineAluFlags(int vf, FlagSrc z, FlagSrc n, FlagSrc h, FlagSrc c) {
         int res = (findAluFlagValue(vf, z, Alu.Flag.Z) ? Alu.Flag.Z.mask() : 0)
                 + (findAluFlagValue(vf, n, Alu.Flag.N) ? Alu.Flag.N.mask() : 0)
                 + (findAluFlagValue(vf, h, Alu.Flag.H) ? Alu.Flag.H.mask() : 0)
                 + (findAluFlagValue(vf, c, Alu.Flag.C) ? Alu.Flag.C.mask() : 0);
-        regFile.set(Reg.F, res);
+        registers[REG_F] = res;
+        deferredFlags = DeferredFlags.NONE;
     }
 
     private boolean findAluFlagValue(int vf, FlagSrc src, Alu.Flag flag) {
@@ -739,7 +1183,7 @@ public final class Cpu implements Component, Clocked {
             case V0:  return false;
             case V1:  return true;
             case ALU: return Bits.test(Alu.unpackFlags(vf), flag.index());
-            case CPU: return Bits.test(regFile.get(Reg.F), flag.index());
+            case CPU: return Bits.test(flags(), flag.index());
         }
         throw new NullPointerException();
     }
@@ -748,7 +1192,7 @@ public final class Cpu implements Component, Clocked {
     
     //return true if the CPU must go directly to the next cycle
     private boolean handleInterrupts(long cycle){
-        if (detectInterrupts() != null) {
+        if (hasPendingInterrupt()) {
             Interrupt curInterrupt = detectInterrupts();
             if (IME) {
                 IF &= ~curInterrupt.mask();
@@ -765,24 +1209,43 @@ public final class Cpu implements Component, Clocked {
     }
     
     private Interrupt detectInterrupts() {
-        if ((IME || nextNonIdleCycle == Long.MAX_VALUE) && (IE & IF) != 0)
-            return Interrupt.values()[Integer.numberOfTrailingZeros(Integer.lowestOneBit(IE & IF))];
+        if (hasPendingInterrupt())
+            return ALL_INTERRUPTS[Integer.numberOfTrailingZeros(IE & IF)];
         else return null;
     }
     
+    private boolean hasPendingInterrupt() {
+        return (IME || isHalted()) && (IE & IF) != 0;
+    }
+    
+    private boolean isHalted() {
+        return nextNonIdleCycle == Long.MAX_VALUE;
+    }
+    
     //This function was used for JUnit tests
     public int[] _testGetPcSpAFBCDEHL() {
         int[] res = new int[10];
         res[0] = PC;
         res[1] = SP;
-        res[2] = regFile.get(Reg.A);
-        res[3] = regFile.get(Reg.F);
-        res[4] = regFile.get(Reg.B);
-        res[5] = regFile.get(Reg.C);
-        res[6] = regFile.get(Reg.D);
-        res[7] = regFile.get(Reg.E);
-        res[8] = regFile.get(Reg.H);
-        res[9] = regFile.get(Reg.L);
+        res[2] = registers[REG_A];
+        res[3] = flags();
+        res[4] = registers[REG_B];
+        res[5] = registers[REG_C];
+        res[6] = registers[REG_D];
+        res[7] = registers[REG_E];
+        res[8] = registers[REG_H];
+        res[9] = registers[REG_L];
         return res;
     }
+    
+    //This function is used for JUnit tests, it does the opposite of the one above
+    public void _testSetPcSpAFBCDEHL(int[] state) {
+        Preconditions.checkArgument(state.length == 10);
+        PC = Preconditions.checkBits16(state[0]);
+        SP = Preconditions.checkBits16(state[1]);
+        setAF(Bits.make16(Preconditions.checkBits8(state[2]), Preconditions.checkBits8(state[3])));
+        setReg16(REG_B, REG_C, Bits.make16(Preconditions.checkBits8(state[4]), Preconditions.checkBits8(state[5])));
+        setReg16(REG_D, REG_E, Bits.make16(Preconditions.checkBits8(state[6]), Preconditions.checkBits8(state[7])));
+        setReg16(REG_H, REG_L, Bits.make16(Preconditions.checkBits8(state[8]), Preconditions.checkBits8(state[9])));
+    }
 }
@@ -2,6 +2,9 @@ package ch.epfl.gameboj.component.lcd;
 
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Bus;
@@ -9,8 +12,8 @@ import ch.epfl.gameboj.Preconditions;
 import ch.epfl.gameboj.Register;
 import ch.epfl.gameboj.RegisterFile;
 import ch.epfl.gameboj.bits.Bit;
-import ch.epfl.gameboj.bits.BitVector;
 import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.bits.MutableBitVector;
 import ch.epfl.gameboj.component.Clocked;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.cpu.Cpu;
@@ -40,9 +43,19 @@ public final class LcdController implements Component, Clocked{
     private static final int TILE_SIZE = 8;
     private static final int TILE_PER_LINE = IMAGE_SIZE/TILE_SIZE;
     private static final int TILE_ADDRESS_ALWAYS_ACCESSIBLE = 0x80;
+    private static final int LINE_WORDS = LCD_WIDTH / Integer.SIZE;
+    private static final int TILE_DATA_END = AddressMap.BG_DISPLAY_DATA[0];
+    private static final int TILE_ROWS = (TILE_DATA_END - AddressMap.VIDEO_RAM_START) / 2;
+    private static final int INVALID_TILE_ROW = -1;
+    private static final int TILE_SOURCE_SIZE = 256 * TILE_SIZE * 2;
+    private static final int PLANES = 4;
+    private static final int PLANE_ROW_WORDS = IMAGE_SIZE / Integer.SIZE;
+    private static final int MAP_BYTES = TILE_PER_LINE * TILE_PER_LINE;
     
     private static final int NUMBER_OF_SPRITE = 40;
     private static final int MAX_SPRITES_ON_SCREEN = 10;
+    private static final int SPRITE_BYTES = 4;
+    private static final int SPRITE_SIZES = 2; // 8x8 and 8x16
     private static final int BG_SPRITES = 0;
     private static final int FG_SPRITES = 1;
     
@@ -50,14 +63,32 @@ public final class LcdController implements Component, Clocked{
     
     private static final int STAT_WRITE_MASK = 0b1111_1000;
     
-    private static final int DMA_DISABLED_VALUE = AddressMap.OAM_RAM_SIZE;
+    private static final int LINES_PER_TASK = 8;
+    
+    private static final long UNKNOWN_CYCLE = -1;
+    
 
     private final Cpu cpu;
-    private final Ram videoRam;
-    private final Ram OAM;
     private Bus bus;
     private LcdImage currentImage;
-    private LcdImage.Builder imageBuilder;
+    private ForkJoinTask<LcdImage> pendingImage; // Image computed in parallel, if any
+    
+    // The video RAM and the OAM, replaced by a copy before being changed if
+    // lines still to be computed in parallel use them
+    private VideoMemory memory;
+    private boolean memoryShared;
+    
+    // Buffers in which the lines are computed, in 32 pixels words as in a BitVector
+    private int[] imageMsb, imageLsb;
+    private final LineRenderer renderer;
+    private final int[] dmaData;
+    
+    // What each line of the frame depends on, logged when it is reached to
+    // compute the lines in parallel at the end of the frame
+    private int[][] lineRegs;
+    private int[] lineSkippedWindowLines;
+    private VideoMemory[] lineMemories;
+    private boolean parallelRendering, renderingInParallel;
     
     private enum MODE{
         MODE0, MODE1, MODE2, MODE3
@@ -71,6 +102,7 @@ public final class LcdController implements Component, Clocked{
     private enum Reg implements Register {
         LCDC, STAT, SCY, SCX, LY, LYC, DMA, BGP, OBP0, OBP1, WY, WX
     }
+    private static final Reg[] ALL_REGS = Reg.values();
     
     private enum LCDC implements Bit{
         BG, OBJ, OBJ_SIZE, BG_AREA, TILE_SOURCE, WIN, WIN_AREA, LCD_STATUS
@@ -88,10 +120,28 @@ public final class LcdController implements Component, Clocked{
         UNUSED0, UNUSED1, UNUSED2, UNUSED3, PALETTE, FLIP_H, FLIP_V, BEHIND_BG
     }
     
+    // The modes are only changed when the LCD controller is accessed or when
+    // they request an interrupt, catching up on the cycles elapsed since
     private long nextNonIdleCycle;
     private MODE nextMode;
+    private long interruptCycle; // Next cycle requesting an interrupt, or UNKNOWN_CYCLE
+    
+    // While the LCD is off, the controller is out of the scheduler until LCDC
+    // switches it on, and the screen stays blank until a frame is completed
+    private boolean lcdOff, screenBlank;
     
-    private int skippedWindowLines, currentDMACycle;
+    private int skippedWindowLines;
+    
+    private int renderedFramesInterval; // 0 if no frame is rendered
+    private long frameCount;
+    private boolean renderingFrame, frameRequested;
+    
+    // Incremented on each change of the video RAM, the OAM or the registers used
+    // to compute the lines. If the current image was computed with a
+    // generation that is still the current one, the next frame will be the
+    // same and is not computed, unless the generation changes during it
+    private long generation, frameStartGeneration, imageGeneration;
+    private boolean reusingImage;
     
     /**
      * Create a new LcdController for a Gameboy
@@ -104,46 +154,121 @@ public final class LcdController implements Component, Clocked{
     public LcdController(Cpu cpu) {
         this.cpu = Objects.requireNonNull(cpu);
         regFile  = new RegisterFile<>(Reg.values());
-        videoRam = new Ram(AddressMap.VIDEO_RAM_SIZE);
-        OAM      = new Ram(AddressMap.OAM_RAM_SIZE);
+        memory   = new VideoMemory();
 
-        imageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
+        imageMsb = new int[LCD_HEIGHT * LINE_WORDS];
+        imageLsb = new int[LCD_HEIGHT * LINE_WORDS];
         currentImage = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT).build();
 
+        renderer = new LineRenderer();
+        dmaData = new int[AddressMap.OAM_RAM_SIZE];
+        lineRegs = new int[LCD_HEIGHT][ALL_REGS.length];
+
         nextNonIdleCycle = Long.MAX_VALUE;
         nextMode = MODE.MODE2;
-        currentDMACycle = DMA_DISABLED_VALUE;
+        interruptCycle = UNKNOWN_CYCLE;
+        lcdOff = true;
+        screenBlank = true;
         skippedWindowLines = 0;
+        renderedFramesInterval = 1;
+        imageGeneration = -1;
 
         setLyOrLyc(Reg.LY, LY_START_VALUE);
     }
     
     /**
-     * Returns the current image that appears on the Gameboy screen
+     * Returns the current image that appears on the Gameboy screen. The same
+     * instance is returned as long as the frames don't change the image.
+     * 
      * @return The current image that appears on the Gameboy screen
      */
     public LcdImage currentImage() {
+        if (pendingImage != null) {
+            currentImage = pendingImage.join();
+            pendingImage = null;
+        }
         return currentImage;
     }
 
+    /**
+     * Set which frames are rendered in the images returned by currentImage.
+     * The frames that are not rendered are skipped, which only changes the
+     * image: the timing of the modes, LY and the interrupts stay the same.
+     * The change applies from the next frame.
+     * 
+     * @param interval
+     *            renders one frame out of "interval", or none if it is 0
+     * @throws IllegalArgumentException
+     *             if the interval is negative
+     */
+    public void setRenderedFrames(int interval) {
+        Preconditions.checkArgument(interval >= 0);
+        renderedFramesInterval = interval;
+    }
+    
+    /**
+     * Request the next frame to be rendered, even if it should be skipped
+     * according to setRenderedFrames.
+     */
+    public void requestFrame() {
+        frameRequested = true;
+    }
+    
+    /**
+     * Set whether the lines of the rendered frames are computed in parallel,
+     * in the common ForkJoinPool, once the frame is over. The emulation then
+     * goes on with the next frame while they are computed, and the images are
+     * the same as those computed during the frame. The change applies from
+     * the next frame.
+     * 
+     * @param parallel
+     *            true to compute the lines in parallel at the end of the frames
+     */
+    public void setParallelRendering(boolean parallel) {
+        parallelRendering = parallel;
+    }
+    
+    /**
+     * Returns whether the screen is blank, because the LCD is off or no frame
+     * was completed since it was switched on. The current image is then the
+     * last one completed before, which is not on the screen.
+     * 
+     * @return true if the screen is blank
+     */
+    public boolean isScreenBlank() {
+        return screenBlank;
+    }
+
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Clocked#cycle(long)
      */
     @Override
     public void cycle(long cycle) {
-        if (nextNonIdleCycle == Long.MAX_VALUE && regFile.testBit(Reg.LCDC, LCDC.LCD_STATUS)) {
+        if (lcdOff && regFile.testBit(Reg.LCDC, LCDC.LCD_STATUS)) {
+            lcdOff = false;
             nextNonIdleCycle = cycle;
             nextMode = MODE.MODE2;
+            startFrame();
+            // The first frame after the LCD is switched on starts at the
+            // line 1, so it can't be reused for the next ones
+            imageStateChanged();
         }
 
-        if (currentDMACycle < DMA_DISABLED_VALUE) {
-            int data = bus.read( Bits.make16(regFile.get(Reg.DMA), 0) + currentDMACycle);
-            write(AddressMap.OAM_START + currentDMACycle, data);
-            currentDMACycle++;
-        }
-
-        if (cycle == nextNonIdleCycle)
-            reallyCycle(cycle);
+        catchUp(cycle);
+    }
+    
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Clocked#nextEventCycle(long)
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        // The LCD starts on the cycle after it was switched on
+        if (lcdOff)
+            return regFile.testBit(Reg.LCDC, LCDC.LCD_STATUS) ? cycle + 1 : Long.MAX_VALUE;
+        // Between the interrupts, the modes only change when they are observed
+        if (interruptCycle == UNKNOWN_CYCLE)
+            interruptCycle = nextInterruptCycle();
+        return Math.max(cycle + 1, interruptCycle);
     }
     
     /* (non-Javadoc)
@@ -152,14 +277,21 @@ public final class LcdController implements Component, Clocked{
     @Override
     public int read(int address) {
         Preconditions.checkBits16(address);
-        if (isBetween(address, AddressMap.REGS_LCDC_START, AddressMap.REGS_LCDC_END))
-            return regFile.get(Reg.values()[address - AddressMap.REGS_LCDC_START]);
+        if (!isMapped(address))
+            return NO_DATA;
+
+        catchUp(cpu.instructionCycle());
+        if (isBetween(address, AddressMap.REGS_LCDC_START, AddressMap.REGS_LCDC_END)) {
+            Reg reg = ALL_REGS[address - AddressMap.REGS_LCDC_START];
+            // LY and STAT only change with the modes
+            if (reg == Reg.LY || reg == Reg.STAT)
+                cpu.readValueChangesAt(nextNonIdleCycle);
+            return regFile.get(reg);
+        }
         else if (isBetween(address, AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_END))
-            return videoRam.read(address - AddressMap.VIDEO_RAM_START);
-        else if (isBetween(address, AddressMap.OAM_START, AddressMap.OAM_END))
-            return OAM.read(address - AddressMap.OAM_START);
+            return memory.videoRam.read(address - AddressMap.VIDEO_RAM_START);
         else
-            return NO_DATA;
+            return memory.OAM.read(address - AddressMap.OAM_START);
     }
 
     /* (non-Javadoc)
@@ -169,12 +301,26 @@ public final class LcdController implements Component, Clocked{
     public void write(int address, int data) {
         Preconditions.checkBits16(address);
         Preconditions.checkBits8(data);
+        if (!isMapped(address))
+            return;
+
+        catchUp(cpu.instructionCycle());
         if (isBetween(address, AddressMap.REGS_LCDC_START, AddressMap.REGS_LCDC_END))
             writeInRegsLCDC(Reg.values()[address - AddressMap.REGS_LCDC_START], data);
         else if (isBetween(address, AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_END))
-            videoRam.write(address - AddressMap.VIDEO_RAM_START, data);
-        else if (isBetween(address, AddressMap.OAM_START, AddressMap.OAM_END))
-            OAM.write(address - AddressMap.OAM_START, data);
+            writeInVideoRam(address, data);
+        else
+            writeInOAM(address, data);
+    }
+     
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return isBetween(address, AddressMap.REGS_LCDC_START, AddressMap.REGS_LCDC_END)
+            || isBetween(address, AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_END)
+            || isBetween(address, AddressMap.OAM_START, AddressMap.OAM_END);
     }
      
     /* (non-Javadoc)
@@ -189,7 +335,14 @@ public final class LcdController implements Component, Clocked{
     
     /*** Private functions ****/
     
-    private void reallyCycle(long cycle) {
+    // Executes the changes of modes up to the given cycle
+    private void catchUp(long cycle) {
+        while (nextNonIdleCycle <= cycle)
+            reallyCycle();
+    }
+    
+    private void reallyCycle() {
+        interruptCycle = UNKNOWN_CYCLE;
         switch (nextMode) {
         case MODE2:
             setLyOrLyc(Reg.LY, Bits.clip(Byte.SIZE, currentLine() + 1));
@@ -199,7 +352,10 @@ public final class LcdController implements Component, Clocked{
             break;
         case MODE3:
             setMode(MODE.MODE3);
-            computeLine();
+            if (renderingFrame && !reusingImage)
+                computeLine();
+            if (!isWindowActivated())
+                skippedWindowLines++;
             nextMode = MODE.MODE0;
             nextNonIdleCycle += MODE3_DURATION;
             break;
@@ -229,16 +385,48 @@ public final class LcdController implements Component, Clocked{
         }
     }
     
+    private void writeInVideoRam(int address, int data) {
+        if (memory.videoRam.read(address - AddressMap.VIDEO_RAM_START) != data) {
+            imageStateChanged();
+            writableMemory().writeInVideoRam(address, data);
+        }
+    }
+    
+    private void writeInOAM(int address, int data) {
+        if (memory.OAM.read(address - AddressMap.OAM_START) != data) {
+            imageStateChanged();
+            writableMemory().writeInOAM(address, data);
+        }
+    }
+    
+    private VideoMemory writableMemory() {
+        if (memoryShared) {
+            memory = new VideoMemory(memory);
+            memoryShared = false;
+        }
+        return memory;
+    }
+    
     private void writeInRegsLCDC(Reg reg, int data) {
+        interruptCycle = UNKNOWN_CYCLE;
         switch (reg) {
         case DMA:
-            currentDMACycle = 0;
+            // The whole block is copied at once, the processor being limited
+            // to the high RAM during the time the transfer takes
+            bus.read(Bits.make16(data, 0), dmaData);
+            for (int i = 0; i < dmaData.length; i++)
+                writeInOAM(AddressMap.OAM_START + i, dmaData[i]);
+            cpu.startDmaTransfer();
             break;
         case LCDC:
+            if (regFile.get(reg) != data)
+                imageStateChanged();
             if (!Bits.test(data, LCDC.LCD_STATUS)) {
                 setMode(MODE.MODE0);
                 setLyOrLyc(Reg.LY, 0);
                 nextNonIdleCycle = Long.MAX_VALUE;
+                lcdOff = true;
+                screenBlank = true;
             }
             break;
         case LY: // LY is read-only
@@ -249,12 +437,24 @@ public final class LcdController implements Component, Clocked{
         case STAT: // 3 LSB of STAT are read-only
             data = (regFile.get(Reg.STAT) & ~STAT_WRITE_MASK) | (data & STAT_WRITE_MASK);
             break;
-        default:
+        default: // SCY, SCX, BGP, OBP0, OBP1, WY and WX are used to compute the lines
+            if (regFile.get(reg) != data)
+                imageStateChanged();
             break;
         }
         
         regFile.set(reg, data);
     }
+    
+    // Must be called before a change of the data used to compute the lines
+    private void imageStateChanged() {
+        if (reusingImage) { 
+            // The lines already passed are those of the current image
+            currentImage().copyTo(imageMsb, imageLsb);
+            reusingImage = false;
+        }
+        generation++;
+    }
    
     private void setLyOrLyc(Reg reg, int value) {
         Preconditions.checkArgument(reg == Reg.LY || reg == Reg.LYC);
@@ -281,168 +481,518 @@ public final class LcdController implements Component, Clocked{
         }
     }
     
+    // Returns the cycle of the next change of mode requesting an interrupt,
+    // following the changes of reallyCycle without doing them. There is at
+    // least one such change per frame, the vertical blank
+    private long nextInterruptCycle() {
+        int stat = regFile.get(Reg.STAT), lyc = regFile.get(Reg.LYC);
+        boolean lycInterrupt = Bits.test(stat, STAT.INT_LYC);
+        MODE mode = nextMode;
+        long cycle = nextNonIdleCycle;
+        int line = currentLine();
+
+        while (true) {
+            switch (mode) {
+            case MODE2:
+                line = Bits.clip(Byte.SIZE, line + 1);
+                if (Bits.test(stat, STAT.INT_MODE2) || (lycInterrupt && line == lyc))
+                    return cycle;
+                mode = MODE.MODE3;
+                cycle += MODE2_DURATION;
+                break;
+            case MODE3:
+                mode = MODE.MODE0;
+                cycle += MODE3_DURATION;
+                break;
+            case MODE0:
+                if (Bits.test(stat, STAT.INT_MODE0) || line + 1 == LCD_HEIGHT)
+                    return cycle;
+                mode = MODE.MODE2;
+                cycle += MODE0_DURATION;
+                break;
+            case MODE1:
+                line = line == LCD_HEIGHT-1 + ADDITIONNAL_BLANK_LINES ? LY_START_VALUE : line + 1;
+                if (lycInterrupt && line == lyc)
+                    return cycle;
+                if (line == LY_START_VALUE) {
+                    mode = MODE.MODE2;
+                    cycle++;
+                } else {
+                    cycle += MODE1_DURATION;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+    
     private void prepareNewImage() {
-        currentImage = imageBuilder.build();
-        imageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
+        if (renderingFrame && !reusingImage) {
+            if (renderingInParallel) {
+                computeLinesInParallel();
+            } else {
+                currentImage = new LcdImage(LCD_WIDTH, LCD_HEIGHT, imageMsb, imageLsb);
+                // The lines not computed in the next frame, as the first one
+                // after the LCD is switched on, are empty
+                Arrays.fill(imageMsb, 0);
+                Arrays.fill(imageLsb, 0);
+            }
+            imageGeneration = generation == frameStartGeneration ? generation : -1;
+            screenBlank = false;
+        }
         skippedWindowLines = 0;
+
+        frameCount++;
+        startFrame();
+    }
+    
+    private void startFrame() {
+        renderingFrame = frameRequested 
+                || (renderedFramesInterval != 0 && frameCount % renderedFramesInterval == 0);
+        frameRequested = false;
+        reusingImage = renderingFrame && imageGeneration == generation;
+        frameStartGeneration = generation;
+
+        // The logs of the previous frame may still be in use
+        renderingInParallel = renderingFrame && parallelRendering;
+        if (renderingInParallel) {
+            lineRegs = new int[LCD_HEIGHT][ALL_REGS.length];
+            lineSkippedWindowLines = new int[LCD_HEIGHT];
+            lineMemories = new VideoMemory[LCD_HEIGHT];
+        }
     }
     
     
     /*** Lines computation part ***/
     
+    // Logs what the current line depends on, then computes it right away or
+    // leaves it to computeLinesInParallel
     private void computeLine() {
-        LcdImageLine.Builder bgBuilder = new LcdImageLine.Builder(IMAGE_SIZE);
-        LcdImageLine.Builder winBuilder = new LcdImageLine.Builder(IMAGE_SIZE);
-        LcdImageLine[] sprites = generateSprites();
-
-        int bgLineInMemory = Math.floorMod(currentLine() + regFile.get(Reg.SCY), IMAGE_SIZE);
-        int winLineInMemory = currentLine() - regFile.get(Reg.WY) - skippedWindowLines;
-
-        for (int i = 0; i < TILE_PER_LINE; i++) {
-            if (regFile.testBit(Reg.LCDC, LCDC.BG))
-                addTileToLine(bgBuilder, regFile.testBit(Reg.LCDC, LCDC.BG_AREA), i, bgLineInMemory);
-
-            if (isWindowActivated() && winLineInMemory >= 0)
-                addTileToLine(winBuilder, regFile.testBit(Reg.LCDC, LCDC.WIN_AREA), i, winLineInMemory);
+        int line = currentLine();
+        int[] regs = lineRegs[line];
+        for (Reg reg : ALL_REGS)
+            regs[reg.index()] = regFile.get(reg);
+        if (regFile.testBit(Reg.LCDC, LCDC.OBJ))
+            memory.computeLineSprites(spriteSize(regs));
+
+        // Rows of the planes are only decoded here, so that the renderers
+        // computing the lines in parallel only read them
+        boolean tileSource = regFile.testBit(Reg.LCDC, LCDC.TILE_SOURCE);
+        if (regFile.testBit(Reg.LCDC, LCDC.BG))
+            memory.computePlaneRow(regFile.testBit(Reg.LCDC, LCDC.BG_AREA), tileSource, backgroundLine(regs, line));
+        int winLine = windowLine(regs, line, skippedWindowLines);
+        if (winLine >= 0)
+            memory.computePlaneRow(regFile.testBit(Reg.LCDC, LCDC.WIN_AREA), tileSource, winLine);
+
+        if (renderingInParallel) {
+            lineSkippedWindowLines[line] = skippedWindowLines;
+            lineMemories[line] = memory;
+            memoryShared = true;
+        } else {
+            renderer.computeLine(memory, regs, line, skippedWindowLines, imageMsb, imageLsb);
         }
-
-        LcdImageLine bg = buildLine(bgBuilder, regFile.get(Reg.SCX));
-        LcdImageLine win = buildLine(winBuilder, 0);
-
-        if (isWindowActivated() && winLineInMemory >= 0)
-            bg = bg.join(realWX(), win);
-        else if (!isWindowActivated())
-            skippedWindowLines++;
-
-        BitVector bgOpacity = bg.opacity() .or(sprites[BG_SPRITES].opacity().not());
-        LcdImageLine result = sprites[BG_SPRITES].below(bg.below(sprites[FG_SPRITES]), bgOpacity);
-        
-        imageBuilder.setLine(currentLine(), result);
     }
     
-    private void addTileToLine(LcdImageLine.Builder line, boolean tileArea, int xPosition, int yPosition) {
-        int startAddress = AddressMap.BG_DISPLAY_DATA[tileArea ? 1 : 0];
-        int offset = Math.floorDiv(yPosition, TILE_SIZE) * TILE_PER_LINE + xPosition;
-        int tileId = read(startAddress + offset);
-
-        boolean source = regFile.testBit(Reg.LCDC, LCDC.TILE_SOURCE);
-        int lsbTileAddress = getTileAddress(tileId, source) + Math.floorMod(yPosition, TILE_SIZE) * 2;
+    // Computes the logged lines of the frame, in groups of LINES_PER_TASK lines
+    // each with its own renderer. The lines that were not logged already are
+    // in the image, as they are those of a reused image
+    private void computeLinesInParallel() {
+        int[][] regs = lineRegs;
+        int[] skippedLines = lineSkippedWindowLines;
+        VideoMemory[] memories = lineMemories;
+        int[] msb = imageMsb, lsb = imageLsb;
 
-        line.setBytes(xPosition, 
-                Bits.reverse8(read(lsbTileAddress + 1)), 
-                Bits.reverse8(read(lsbTileAddress)));
+        currentImage();
+        pendingImage = ForkJoinPool.commonPool().submit(() -> {
+            IntStream.range(0, LCD_HEIGHT / LINES_PER_TASK).parallel().forEach(task -> {
+                LineRenderer taskRenderer = new LineRenderer();
+                for (int line = task * LINES_PER_TASK; line < (task + 1) * LINES_PER_TASK; line++) {
+                    if (memories[line] != null)
+                        taskRenderer.computeLine(memories[line], regs[line], line, skippedLines[line], msb, lsb);
+                }
+            });
+            return new LcdImage(LCD_WIDTH, LCD_HEIGHT, msb, lsb);
+        });
+        imageMsb = new int[LCD_HEIGHT * LINE_WORDS];
+        imageLsb = new int[LCD_HEIGHT * LINE_WORDS];
     }
     
-    private int getTileAddress(int tileId, boolean tileSource) {
+    
+    /*** Utilitary functions ***/
+    
+    private static int spriteSize(int[] regs) {
+        return Bits.test(regs[Reg.LCDC.index()], LCDC.OBJ_SIZE) ? TILE_SIZE * 2 : TILE_SIZE;
+    }
+
+    private static int getTileAddress(int tileId, boolean tileSource) {
         if (tileSource || tileId >= TILE_ADDRESS_ALWAYS_ACCESSIBLE)
             return AddressMap.TILE_SOURCE[1] + tileId * TILE_SIZE * 2;
         else
             return 2*(AddressMap.TILE_SOURCE[0]+ tileId * TILE_SIZE) - AddressMap.TILE_SOURCE[1];
     }
-        
-    private LcdImageLine[] generateSprites() {
-        LcdImageLine fgSprites = new LcdImageLine.Builder(LCD_WIDTH).build();
-        LcdImageLine bgSprites = new LcdImageLine.Builder(LCD_WIDTH).build();
-
-        if (regFile.testBit(Reg.LCDC, LCDC.OBJ)) {
-            int[] sprites = spritesIntersectingLine();
-
-            for (int i = sprites.length - 1; i >= 0; i--) {
-                if (testSpriteParam(sprites[i], SPRITE_PARAM.BEHIND_BG))
-                    bgSprites = bgSprites.below(getSpriteLine(sprites[i]));
-                else
-                    fgSprites = fgSprites.below(getSpriteLine(sprites[i]));
-            }
-        }
 
-        LcdImageLine[] result = new LcdImageLine[2];
-        result[BG_SPRITES] = bgSprites;
-        result[FG_SPRITES] = fgSprites;
-        return result;
+    private static int backgroundLine(int[] regs, int line) {
+        return (line + regs[Reg.SCY.index()]) % IMAGE_SIZE;
     }
-    
-    private LcdImageLine getSpriteLine(int spriteId) {
-        LcdImageLine.Builder spriteLine = new LcdImageLine.Builder(LCD_WIDTH);
 
-        int offset = Math.floorMod(currentLine() - realSpriteY(spriteId), currentSpriteSize()) * 2;
+    // Returns the line of the window shown on a given line, or -1 if none is
+    private static int windowLine(int[] regs, int line, int skippedWindowLines) {
+        int winLine = line - regs[Reg.WY.index()] - skippedWindowLines;
+        return isWindowActivated(regs[Reg.LCDC.index()], regs[Reg.WX.index()]) && winLine >= 0 ? winLine : -1;
+    }
 
-        if (testSpriteParam(spriteId, SPRITE_PARAM.FLIP_V))
-            offset = (currentSpriteSize() - 1) * 2 - offset;
+    private static boolean isWindowActivated(int lcdc, int wx) {
+        return Bits.test(lcdc, LCDC.WIN) && isBetween(realWX(wx), 0, LCD_WIDTH);
+    }
 
-        int lsbAddress = getTileAddress(getSprite(spriteId, SPRITE.TILE), true) + offset;
+    private static int realWX(int wx) {
+        return Math.max(0, wx - 7);
+    }
 
-        if (testSpriteParam(spriteId, SPRITE_PARAM.FLIP_H))
-            spriteLine.setBytes(0, read(lsbAddress + 1), read(lsbAddress));
-        else
-            spriteLine.setBytes(0, Bits.reverse8(read(lsbAddress + 1)), Bits.reverse8(read(lsbAddress)));
+    private boolean isWindowActivated() {
+        return isWindowActivated(regFile.get(Reg.LCDC), regFile.get(Reg.WX));
+    }
 
-        int palette = testSpriteParam(spriteId, SPRITE_PARAM.PALETTE)
-                ? regFile.get(Reg.OBP1)
-                : regFile.get(Reg.OBP0);
+    private int currentLine() {
+        return regFile.get(Reg.LY);
+    }
 
-        return spriteLine.build().shift(realSpriteX(spriteId)).mapColor(palette);
+    private static boolean isBetween(int toTest, int min, int max) {
+        return (toTest >= min && toTest < max);
     }
     
-    private int[] spritesIntersectingLine() {
-        int[] xAndIndex = new int[MAX_SPRITES_ON_SCREEN];
-        int foundedSprites = 0;
+    
+    /*** Video memory and lines renderer ***/
+    
+    // The video RAM and the OAM, with what the lines computation derives from them
+    private static final class VideoMemory {
+        private final Ram videoRam, OAM;
+
+        // The rows of all the tiles, as the msb and lsb bytes of their colors
+        // with the first pixel in bit 0 (or 7 if flipped), or INVALID_TILE_ROW
+        // if the video RAM changed since they were decoded. As they only depend
+        // on the video RAM, concurrent renderers may decode them at the same time
+        private final int[] tileRows, flippedTileRows;
+
+        // The rows of the 256x256 pixels planes drawn by the two tile maps with
+        // each tile source, at index 2 * map + source, as the msb and lsb words
+        // of their colors. A row is only decoded when a line needs it, and
+        // patched or invalidated when the tile map or the tile data changes.
+        // As the writes are done on a copy of a shared memory, valid rows never
+        // change while the lines logged before read them
+        private final int[][] planeMsb, planeLsb;
+        private final boolean[][] planeRowValid;
+
+        // The sprites intersecting each line, sorted by priority, as keys made
+        // of their x coordinate and index, for each sprite size, valid if the
+        // OAM didn't change since they were computed. As for the planes, the
+        // sprites of one size are not changed while the lines logged before
+        // with that size read them
+        private final int[][][] lineSprites;
+        private final int[][] lineSpritesCount;
+        private final boolean[] lineSpritesValid;
+
+        VideoMemory() {
+            videoRam = new Ram(AddressMap.VIDEO_RAM_SIZE);
+            OAM = new Ram(AddressMap.OAM_RAM_SIZE);
+            tileRows = new int[TILE_ROWS];
+            flippedTileRows = new int[TILE_ROWS];
+            Arrays.fill(tileRows, INVALID_TILE_ROW);
+            Arrays.fill(flippedTileRows, INVALID_TILE_ROW);
+            planeMsb = new int[PLANES][IMAGE_SIZE * PLANE_ROW_WORDS];
+            planeLsb = new int[PLANES][IMAGE_SIZE * PLANE_ROW_WORDS];
+            planeRowValid = new boolean[PLANES][IMAGE_SIZE];
+            lineSprites = new int[SPRITE_SIZES][LCD_HEIGHT][MAX_SPRITES_ON_SCREEN];
+            lineSpritesCount = new int[SPRITE_SIZES][LCD_HEIGHT];
+            lineSpritesValid = new boolean[SPRITE_SIZES];
+        }
+
+        VideoMemory(VideoMemory that) {
+            videoRam = new Ram(that.videoRam);
+            OAM = new Ram(that.OAM);
+            tileRows = that.tileRows.clone();
+            flippedTileRows = that.flippedTileRows.clone();
+            planeMsb = new int[PLANES][];
+            planeLsb = new int[PLANES][];
+            planeRowValid = new boolean[PLANES][];
+            for (int i = 0; i < PLANES; i++) {
+                planeMsb[i] = that.planeMsb[i].clone();
+                planeLsb[i] = that.planeLsb[i].clone();
+                planeRowValid[i] = that.planeRowValid[i].clone();
+            }
+            lineSprites = new int[SPRITE_SIZES][LCD_HEIGHT][];
+            lineSpritesCount = new int[SPRITE_SIZES][];
+            for (int size = 0; size < SPRITE_SIZES; size++) {
+                for (int i = 0; i < LCD_HEIGHT; i++)
+                    lineSprites[size][i] = that.lineSprites[size][i].clone();
+                lineSpritesCount[size] = that.lineSpritesCount[size].clone();
+            }
+            lineSpritesValid = that.lineSpritesValid.clone();
+        }
+
+        void writeInVideoRam(int address, int data) {
+            videoRam.write(address - AddressMap.VIDEO_RAM_START, data);
+            if (address < TILE_DATA_END) {
+                int row = (address - AddressMap.VIDEO_RAM_START) / 2;
+                tileRows[row] = INVALID_TILE_ROW;
+                flippedTileRows[row] = INVALID_TILE_ROW;
+
+                // Only the rows drawn with a tile source including the tile change
+                for (int plane = 0; plane < PLANES; plane++) {
+                    int source = plane % 2;
+                    if (isBetween(address, AddressMap.TILE_SOURCE[source], AddressMap.TILE_SOURCE[source] + TILE_SOURCE_SIZE)) {
+                        for (int y = row % TILE_SIZE; y < IMAGE_SIZE; y += TILE_SIZE)
+                            planeRowValid[plane][y] = false;
+                    }
+                }
+            } else {
+                int index = address - TILE_DATA_END;
+                int map = index / MAP_BYTES;
+                int tileY = index % MAP_BYTES / TILE_PER_LINE, tileX = index % TILE_PER_LINE;
+                for (int source = 0; source < 2; source++) {
+                    int plane = 2 * map + source;
+                    for (int y = tileY * TILE_SIZE; y < (tileY + 1) * TILE_SIZE; y++) {
+                        if (planeRowValid[plane][y])
+                            setPlaneTile(plane, y, tileX, data);
+                    }
+                }
+            }
+        }
+
+        void writeInOAM(int address, int data) {
+            OAM.write(address - AddressMap.OAM_START, data);
+            Arrays.fill(lineSpritesValid, false);
+        }
 
-        for (int i = 0; i < NUMBER_OF_SPRITE && foundedSprites < MAX_SPRITES_ON_SCREEN; i++) {
-            if (isBetween(currentLine(), realSpriteY(i), realSpriteY(i) + currentSpriteSize())) {
-                xAndIndex[foundedSprites] = realSpriteX(i) << Integer.SIZE / 2 | i;
-                foundedSprites++;
+        // Returns the row of a tile starting at the given address, from the cache
+        int tileRow(int lsbAddress, boolean flipped) {
+            int index = (lsbAddress - AddressMap.VIDEO_RAM_START) / 2;
+            int[] rows = flipped ? flippedTileRows : tileRows;
+
+            if (rows[index] == INVALID_TILE_ROW) {
+                int msb = videoRam.read(lsbAddress + 1 - AddressMap.VIDEO_RAM_START);
+                int lsb = videoRam.read(lsbAddress - AddressMap.VIDEO_RAM_START);
+                rows[index] = flipped
+                        ? msb << Byte.SIZE | lsb
+                        : Bits.reverse8(msb) << Byte.SIZE | Bits.reverse8(lsb);
             }
+            return rows[index];
         }
 
-        int[] result = new int[foundedSprites];
-        Arrays.sort(xAndIndex, 0, foundedSprites);
+        // Decodes, if it is not valid, the row of the plane drawn by a tile map
+        // with a tile source
+        void computePlaneRow(boolean map, boolean tileSource, int row) {
+            int plane = planeIndex(map, tileSource);
+            if (planeRowValid[plane][row])
+                return;
+
+            int startAddress = AddressMap.BG_DISPLAY_DATA[map ? 1 : 0] + row / TILE_SIZE * TILE_PER_LINE;
+            for (int i = 0; i < TILE_PER_LINE; i++)
+                setPlaneTile(plane, row, i, videoRam.read(startAddress + i - AddressMap.VIDEO_RAM_START));
+            planeRowValid[plane][row] = true;
+        }
+
+        // Puts in a line of IMAGE_SIZE pixels a row of a plane, which must
+        // be valid, the pixels of color 0 being transparent
+        void planeRowInto(boolean map, boolean tileSource, int row, MutableLcdImageLine result) {
+            int plane = planeIndex(map, tileSource);
+            result.msb().copyFrom(planeMsb[plane], row * PLANE_ROW_WORDS);
+            result.lsb().copyFrom(planeLsb[plane], row * PLANE_ROW_WORDS);
+            result.msb().orInto(result.lsb(), result.opacity());
+        }
 
-        for (int i = 0; i < foundedSprites; i++) {
-            result[i] = Bits.clip(16, xAndIndex[i]);
+        private void setPlaneTile(int plane, int row, int tileX, int tileId) {
+            int tileRow = tileRow(getTileAddress(tileId, plane % 2 == 1) + row % TILE_SIZE * 2, false);
+            int word = row * PLANE_ROW_WORDS + tileX * Byte.SIZE / Integer.SIZE;
+            int shift = tileX * Byte.SIZE % Integer.SIZE;
+            int mask = ~(0xFF << shift);
+            planeMsb[plane][word] = planeMsb[plane][word] & mask | (tileRow >>> Byte.SIZE) << shift;
+            planeLsb[plane][word] = planeLsb[plane][word] & mask | Bits.clip(Byte.SIZE, tileRow) << shift;
+        }
+
+        private static int planeIndex(boolean map, boolean tileSource) {
+            return (map ? 2 : 0) + (tileSource ? 1 : 0);
+        }
+
+        // Puts in lineSprites the first sprites of the OAM intersecting each
+        // line, in a single pass over the OAM, sorted by priority
+        void computeLineSprites(int spriteSize) {
+            int size = spriteSizeIndex(spriteSize);
+            if (lineSpritesValid[size])
+                return;
+            int[][] lineSprites = this.lineSprites[size];
+            int[] lineSpritesCount = this.lineSpritesCount[size];
+            Arrays.fill(lineSpritesCount, 0);
+
+            for (int i = 0; i < NUMBER_OF_SPRITE; i++) {
+                int key = realSpriteX(i) << Integer.SIZE / 2 | i;
+                int firstLine = Math.max(0, realSpriteY(i));
+                int lastLine = Math.min(LCD_HEIGHT, realSpriteY(i) + spriteSize);
+
+                for (int line = firstLine; line < lastLine; line++) {
+                    int count = lineSpritesCount[line];
+                    if (count < MAX_SPRITES_ON_SCREEN) {
+                        int[] sprites = lineSprites[line];
+                        int j = count;
+                        for (; j > 0 && sprites[j - 1] > key; j--)
+                            sprites[j] = sprites[j - 1];
+                        sprites[j] = key;
+                        lineSpritesCount[line] = count + 1;
+                    }
+                }
+            }
+            lineSpritesValid[size] = true;
+        }
+
+        // Returns the sprites of a line, which must have been computed, in
+        // their first "count" elements
+        int[] lineSprites(int spriteSize, int line) {
+            return lineSprites[spriteSizeIndex(spriteSize)][line];
+        }
+
+        int lineSpritesCount(int spriteSize, int line) {
+            return lineSpritesCount[spriteSizeIndex(spriteSize)][line];
+        }
+
+        private static int spriteSizeIndex(int spriteSize) {
+            return spriteSize / TILE_SIZE - 1;
+        }
+
+        int realSpriteX(int spriteId) {
+            return getSprite(spriteId, SPRITE.X) - TILE_SIZE;
+        }
+
+        int realSpriteY(int spriteId) {
+            return getSprite(spriteId, SPRITE.Y) - TILE_SIZE * 2;
+        }
+
+        int getSprite(int spriteId, SPRITE part) {
+            return OAM.read(spriteId * SPRITE_BYTES + part.ordinal());
         }
-        return result;
     }
     
-    
-    /*** Utilitary functions ***/
-    
-    private int currentSpriteSize() {
-        return regFile.testBit(Reg.LCDC, LCDC.OBJ_SIZE) ? TILE_SIZE * 2 : TILE_SIZE;
-    }
+    // Computes the lines from the logged registers and memory, with its own
+    // lines, on which the operations are done in place
+    private static final class LineRenderer {
+        private final MutableLcdImageLine tiles = new MutableLcdImageLine(IMAGE_SIZE);
+        private final MutableLcdImageLine window = new MutableLcdImageLine(LCD_WIDTH);
+        private final MutableLcdImageLine background = new MutableLcdImageLine(LCD_WIDTH);
+        private final MutableLcdImageLine[] sprites = {
+                new MutableLcdImageLine(LCD_WIDTH), new MutableLcdImageLine(LCD_WIDTH) };
+        // The truth tables mapping the msb and lsb of the colors of the
+        // sprites with OBP0 and OBP1, computed once per line
+        private final int[][] spritePalettes = new int[2][2];
+        private final MutableBitVector bgOpacity = new MutableBitVector(LCD_WIDTH);
+
+        // The state of the line being computed
+        private VideoMemory memory;
+        private int[] regs;
+        private int line;
+
+        void computeLine(VideoMemory memory, int[] regs, int line, int skippedWindowLines,
+                int[] imageMsb, int[] imageLsb) {
+            this.memory = memory;
+            this.regs = regs;
+            this.line = line;
+
+            int winLine = windowLine(regs, line, skippedWindowLines);
+
+            if (test(LCDC.BG))
+                memory.planeRowInto(test(LCDC.BG_AREA), test(LCDC.TILE_SOURCE), backgroundLine(regs, line), tiles);
+            else
+                tiles.clear();
+            tiles.extractWrappedInto(reg(Reg.SCX), background);
+
+            if (winLine >= 0) {
+                memory.planeRowInto(test(LCDC.WIN_AREA), test(LCDC.TILE_SOURCE), winLine, tiles);
+                tiles.extractWrappedInto(0, window);
+                background.joinInto(realWX(reg(Reg.WX)), window, background);
+            }
 
-    private boolean testSpriteParam(int spriteId, SPRITE_PARAM param) {
-        return Bits.test(getSprite(spriteId, SPRITE.PARAMS), param);
-    }
+            computeSprites();
 
-    private int realSpriteX(int spriteId) {
-        return getSprite(spriteId, SPRITE.X) - TILE_SIZE;
-    }
+            // The background is above the background sprites where it is opaque
+            sprites[BG_SPRITES].opacity().notInto(bgOpacity);
+            background.opacity().orInto(bgOpacity, bgOpacity);
 
-    private int realSpriteY(int spriteId) {
-        return getSprite(spriteId, SPRITE.Y) - TILE_SIZE * 2;
-    }
+            background.mapColorInto(reg(Reg.BGP), background);
+            background.belowInto(sprites[FG_SPRITES], background);
+            sprites[BG_SPRITES].belowInto(background, bgOpacity, background);
 
-    private int getSprite(int spriteId, SPRITE part) {
-        return OAM.read((spriteId * 4) + part.ordinal());
-    }
+            background.msb().copyInto(imageMsb, line * LINE_WORDS);
+            background.lsb().copyInto(imageLsb, line * LINE_WORDS);
+        }
 
-    private LcdImageLine buildLine(LcdImageLine.Builder line, int extractOffset) {
-        return line.build().extractWrapped(extractOffset, LCD_WIDTH).mapColor(regFile.get(Reg.BGP));
-    }
+        private void computeSprites() {
+            sprites[BG_SPRITES].clear();
+            sprites[FG_SPRITES].clear();
 
-    private boolean isWindowActivated() {
-        return regFile.testBit(Reg.LCDC, LCDC.WIN) && isBetween(realWX(), 0, LCD_WIDTH);
-    }
+            // The sprites of the line were computed when it was logged. They
+            // are put by decreasing priority, each one below the previous ones
+            if (test(LCDC.OBJ)) {
+                setPaletteTables(spritePalettes[0], reg(Reg.OBP0));
+                setPaletteTables(spritePalettes[1], reg(Reg.OBP1));
 
-    private int realWX() {
-        return Math.max(0, regFile.get(Reg.WX) - 7);
-    }
+                int[] lineSprites = memory.lineSprites(spriteSize(regs), line);
+                for (int i = 0; i < memory.lineSpritesCount(spriteSize(regs), line); i++)
+                    addSpriteToLine(Bits.clip(Integer.SIZE / 2, lineSprites[i]));
+            }
+        }
 
-    private int currentLine() {
-        return regFile.get(Reg.LY);
-    }
+        private void addSpriteToLine(int spriteId) {
+            int params = memory.getSprite(spriteId, SPRITE.PARAMS);
+            int spriteSize = spriteSize(regs);
+            int offset = Math.floorMod(line - memory.realSpriteY(spriteId), spriteSize) * 2;
 
-    private boolean isBetween(int toTest, int min, int max) {
-        return (toTest >= min && toTest < max);
+            if (Bits.test(params, SPRITE_PARAM.FLIP_V))
+                offset = (spriteSize - 1) * 2 - offset;
+
+            int lsbAddress = getTileAddress(memory.getSprite(spriteId, SPRITE.TILE), true) + offset;
+            int row = memory.tileRow(lsbAddress, Bits.test(params, SPRITE_PARAM.FLIP_H));
+
+            int[] palette = spritePalettes[Bits.test(params, SPRITE_PARAM.PALETTE) ? 1 : 0];
+            int layer = Bits.test(params, SPRITE_PARAM.BEHIND_BG) ? BG_SPRITES : FG_SPRITES;
+
+            // The pixels of color 0 are transparent, whatever the palette
+            int msb = row >>> Byte.SIZE, lsb = Bits.clip(Byte.SIZE, row);
+            sprites[layer].setBytesBelow(memory.realSpriteX(spriteId),
+                    mapColors(msb, lsb, palette[0]), mapColors(msb, lsb, palette[1]), msb | lsb);
+        }
+
+        // Puts in "tables" the truth tables giving the msb and the lsb of the
+        // color of each color in a palette
+        private static void setPaletteTables(int[] tables, int palette) {
+            tables[0] = 0;
+            tables[1] = 0;
+            for (int i = 0; i < LcdImageLine.NUMBER_OF_COLORS; i++) {
+                if (Bits.test(palette, 2 * i + 1))
+                    tables[0] |= 1 << i;
+                if (Bits.test(palette, 2 * i))
+                    tables[1] |= 1 << i;
+            }
+        }
+
+        // Returns the bits given by a truth table indexed by the msb and lsb
+        // of the colors of 8 pixels, as MutableBitVector.combineInto
+        private static int mapColors(int msb, int lsb, int table) {
+            int result = 0;
+            for (int color = 0; color < LcdImageLine.NUMBER_OF_COLORS; color++) {
+                if (Bits.test(table, color)) {
+                    int high = Bits.test(color, 1) ? msb : ~msb;
+                    int low = Bits.test(color, 0) ? lsb : ~lsb;
+                    result |= high & low;
+                }
+            }
+            return result & 0xFF;
+        }
+
+        private int reg(Reg reg) {
+            return regs[reg.index()];
+        }
+
+        private boolean test(LCDC bit) {
+            return Bits.test(reg(Reg.LCDC), bit);
+        }
     }
 }
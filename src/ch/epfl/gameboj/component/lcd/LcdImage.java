@@ -1,22 +1,34 @@
 package ch.epfl.gameboj.component.lcd;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
 import ch.epfl.gameboj.Preconditions;
 
 /**
- * This class represents an image on the GameBoy LCD screen
+ * This class represents an image on the GameBoy LCD screen. The pixels are
+ * stored packed, 2 bits per pixel, and the image has a 64 bits hash of its
+ * pixels computed once, so that different images are told apart in constant
+ * time.
  * 
  * @author Corentin Junod (283214)
  */
 public final class LcdImage {
     
-    private final List<LcdImageLine> listLines;
+    private static final int PIXELS_PER_WORD = Long.SIZE / 2;
+    private static final int PIXELS_PER_BYTE = Byte.SIZE / 2;
+    private static final long HASH_MULTIPLIER = 0x9E37_79B9_7F4A_7C15L;
+    
     private final int width;
     private final int height;
+    private final int wordsPerLine;
+    // The colors of the pixels, line after line, 32 pixels per word with the
+    // first one in the bits 0 and 1
+    private final long[] pixels;
+    private final long hash;
 
     /**
      * Create a new image of a given size made of a given list of lines
@@ -38,7 +50,35 @@ public final class LcdImage {
         
         this.width = width;
         this.height = height;
-        this.listLines = Collections.unmodifiableList(new ArrayList<>(listLines));
+        wordsPerLine = Math.floorDiv(width + PIXELS_PER_WORD - 1, PIXELS_PER_WORD);
+        pixels = new long[height * wordsPerLine];
+
+        for (int y = 0; y < Math.min(height, listLines.size()); y++) {
+            LcdImageLine line = listLines.get(y);
+            for (int x = 0; x < Math.min(width, line.size()); x++) {
+                long color = (line.msb().testBit(x) ? 0b10 : 0) | (line.lsb().testBit(x) ? 0b01 : 0);
+                pixels[y * wordsPerLine + x / PIXELS_PER_WORD] |= color << 2 * (x % PIXELS_PER_WORD);
+            }
+        }
+        hash = hash(pixels);
+    }
+
+    /*
+     * Create a new image of a given size from the bits of the colors of its
+     * pixels, in 32 pixels words as in a BitVector, as computed by the
+     * LcdController. The arrays can be reused afterwards.
+     */
+    LcdImage(int width, int height, int[] msb, int[] lsb) {
+        Preconditions.checkArgument(width > 0 && height > 0 && width % PIXELS_PER_WORD == 0);
+        Preconditions.checkArgument(msb.length == height * width / Integer.SIZE && lsb.length == msb.length);
+
+        this.width = width;
+        this.height = height;
+        this.wordsPerLine = width / PIXELS_PER_WORD;
+        pixels = new long[msb.length];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = spread(msb[i]) << 1 | spread(lsb[i]);
+        hash = hash(pixels);
     }
     
     /**
@@ -69,11 +109,155 @@ public final class LcdImage {
      * @return The color of the given pixel
      * @throws IllegalArgumentException
      *             if one of the parameters is negative
+     * @throws IndexOutOfBoundsException
+     *             if the pixel is outside of the image
      */
     public int get(int x, int y) {
         Preconditions.checkArgument(x >= 0 && y >= 0);
-        return (listLines.get(y).msb().testBit(x) ? 0b10 : 0b00) 
-             | (listLines.get(y).lsb().testBit(x) ? 0b01 : 0b00);
+        Objects.checkIndex(x, width);
+        Objects.checkIndex(y, height);
+
+        long word = pixels[y * wordsPerLine + x / PIXELS_PER_WORD];
+        return (int) (word >>> 2 * (x % PIXELS_PER_WORD)) & 0b11;
+    }
+    
+    /**
+     * Returns a 64 bits hash of the pixels of the image, computed when the
+     * image was created. Images with different hashes are different.
+     * 
+     * @return the hash of the pixels of the image
+     */
+    public long contentHash() {
+        return hash;
+    }
+    
+    /**
+     * Returns the colors of the pixels, 2 bits per pixel. Each line starts in a
+     * new long, which holds 32 pixels, the first one in its 2 LSB.
+     * 
+     * @return a new array with the colors of the pixels, line after line
+     */
+    public long[] packedPixels() {
+        return pixels.clone();
+    }
+    
+    /**
+     * Write the pixels of the image, line after line, as ARGB colors in a
+     * given array
+     * 
+     * @param pixels
+     *            the array in which the pixels are written, from index 0
+     * @param colorMap
+     *            the ARGB colors of the 4 colors of the Gameboy
+     * @throws IllegalArgumentException
+     *             if the array is smaller than the image or the color map
+     *             doesn't contain 4 colors
+     * @throws NullPointerException
+     *             if one of the arrays is null
+     */
+    public void writeArgb(int[] pixels, int[] colorMap) {
+        Preconditions.checkArgument(pixels.length >= width * height);
+        Preconditions.checkArgument(colorMap.length == LcdImageLine.NUMBER_OF_COLORS);
+
+        int[] table = argbTable(colorMap);
+        for (int y = 0; y < height; y++)
+            writeArgbLine(y, pixels, y * width, table);
+    }
+    
+    /**
+     * Write the pixels of the image, line after line, as ARGB colors in a
+     * given buffer, from its current position
+     * 
+     * @param pixels
+     *            the buffer in which the pixels are written
+     * @param colorMap
+     *            the ARGB colors of the 4 colors of the Gameboy
+     * @throws IllegalArgumentException
+     *             if the remaining space in the buffer is smaller than the
+     *             image or the color map doesn't contain 4 colors
+     * @throws NullPointerException
+     *             if the buffer or the color map is null
+     */
+    public void writeArgb(IntBuffer pixels, int[] colorMap) {
+        Preconditions.checkArgument(pixels.remaining() >= width * height);
+        Preconditions.checkArgument(colorMap.length == LcdImageLine.NUMBER_OF_COLORS);
+
+        int[] table = argbTable(colorMap);
+        int[] line = new int[width];
+        for (int y = 0; y < height; y++) {
+            writeArgbLine(y, line, 0, table);
+            pixels.put(line);
+        }
+    }
+    
+    // Writes the given line in "pixels" from "start", the 4 pixels of each
+    // byte of the packed words with a single lookup in "table"
+    private void writeArgbLine(int y, int[] pixels, int start, int[] table) {
+        int x = 0;
+        for (int w = y * wordsPerLine; w < (y + 1) * wordsPerLine; w++) {
+            long colors = this.pixels[w];
+            for (int i = 0; i < Long.BYTES && x < width; i++, x += PIXELS_PER_BYTE) {
+                int entry = ((int) (colors >>> i * Byte.SIZE) & 0xFF) * PIXELS_PER_BYTE;
+                if (x + PIXELS_PER_BYTE <= width) {
+                    pixels[start + x]     = table[entry];
+                    pixels[start + x + 1] = table[entry + 1];
+                    pixels[start + x + 2] = table[entry + 2];
+                    pixels[start + x + 3] = table[entry + 3];
+                } else {
+                    for (int j = 0; j < width - x; j++)
+                        pixels[start + x + j] = table[entry + j];
+                }
+            }
+        }
+    }
+    
+    // The ARGB colors of the 4 pixels of every byte of a packed word, at
+    // 4 * byte, the first pixel in the 2 LSB of the byte
+    private static int[] argbTable(int[] colorMap) {
+        int[] table = new int[PIXELS_PER_BYTE << Byte.SIZE];
+        for (int b = 0; b < 1 << Byte.SIZE; b++) {
+            for (int i = 0; i < PIXELS_PER_BYTE; i++)
+                table[b * PIXELS_PER_BYTE + i] = colorMap[b >>> 2 * i & 0b11];
+        }
+        return table;
+    }
+    
+    // Copies the bits of the colors of the pixels in arrays of the size of
+    // those given to the constructor
+    void copyTo(int[] msb, int[] lsb) {
+        for (int i = 0; i < pixels.length; i++) {
+            msb[i] = compact(pixels[i] >>> 1);
+            lsb[i] = compact(pixels[i]);
+        }
+    }
+    
+    // Spreads the 32 bits of "bits" on the even bits of a long
+    private static long spread(int bits) {
+        long x = Integer.toUnsignedLong(bits);
+        x = (x | x << 16) & 0x0000_FFFF_0000_FFFFL;
+        x = (x | x << 8)  & 0x00FF_00FF_00FF_00FFL;
+        x = (x | x << 4)  & 0x0F0F_0F0F_0F0F_0F0FL;
+        x = (x | x << 2)  & 0x3333_3333_3333_3333L;
+        x = (x | x << 1)  & 0x5555_5555_5555_5555L;
+        return x;
+    }
+    
+    // Gathers the even bits of a long, the inverse of spread
+    private static int compact(long bits) {
+        long x = bits & 0x5555_5555_5555_5555L;
+        x = (x | x >>> 1)  & 0x3333_3333_3333_3333L;
+        x = (x | x >>> 2)  & 0x0F0F_0F0F_0F0F_0F0FL;
+        x = (x | x >>> 4)  & 0x00FF_00FF_00FF_00FFL;
+        x = (x | x >>> 8)  & 0x0000_FFFF_0000_FFFFL;
+        x = (x | x >>> 16) & 0x0000_0000_FFFF_FFFFL;
+        return (int) x;
+    }
+    
+    private static long hash(long[] pixels) {
+        long hash = pixels.length;
+        for (long word : pixels)
+            hash = (hash ^ word) * HASH_MULTIPLIER;
+        return hash ^ hash >>> Integer.SIZE;
     }
     
     /* (non-Javadoc)
@@ -83,9 +267,11 @@ public final class LcdImage {
     public boolean equals(Object that) {
         if (that instanceof LcdImage) {
             LcdImage that0 = (LcdImage) that;
-            return (listLines.equals(that0.listLines) 
+            // The pixels are only compared if the hashes are the same
+            return (hash   == that0.hash
                    && height == that0.height
-                   && width  == that0.width);
+                   && width  == that0.width
+                   && Arrays.equals(pixels, that0.pixels));
         } else {
             return false;
         }
@@ -96,7 +282,7 @@ public final class LcdImage {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(listLines, width, height);
+        return Long.hashCode(hash);
     }
     
     /** Builder **/
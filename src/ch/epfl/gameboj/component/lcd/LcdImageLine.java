@@ -188,23 +188,17 @@ public final class LcdImageLine {
         if (palette == IDENTITY_PALETTE) {
             return new LcdImageLine(msb, lsb, opacity);
         } else {
-            BitVector newMsb = new BitVector(size());
-            BitVector newLsb = new BitVector(size());
-
-            BitVector[] masks = new BitVector[]{
-                msb.not().and(lsb.not()),
-                msb.not().and(lsb),
-                msb.and(lsb.not()),
-                msb.and(lsb)
-            };
-
+            // The truth tables giving each bit of the new colors from the old ones
+            int msbTable = 0, lsbTable = 0;
             for (int i = 0; i < NUMBER_OF_COLORS; i++) {
                 if (Bits.test(palette, 2 * i + 1)) 
-                    newMsb = newMsb.or(masks[i]);
+                    msbTable |= 1 << i;
                 if (Bits.test(palette, 2 * i)) 
-                    newLsb = newLsb.or(masks[i]);
+                    lsbTable |= 1 << i;
             }
-            return new LcdImageLine(newMsb, newLsb, opacity);
+            return new LcdImageLine(BitVector.combine(msb, lsb, msbTable),
+                                    BitVector.combine(msb, lsb, lsbTable),
+                                    opacity);
         }
     }
     
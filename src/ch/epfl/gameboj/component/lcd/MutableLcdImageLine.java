@@ -0,0 +1,260 @@
+package ch.epfl.gameboj.component.lcd;
+
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.bits.MutableBitVector;
+
+/**
+ * This class represents a mutable line on the GameBoy LCD screen. It offers
+ * the operations of LcdImageLine, but storing their result in a line given by
+ * the caller, so that the lines can be computed without any allocation.
+ * 
+ * @author Corentin Junod (283214)
+ */
+public final class MutableLcdImageLine {
+
+    private final MutableBitVector msb;
+    private final MutableBitVector lsb;
+    private final MutableBitVector opacity; //0=transparent, 1=opaque
+
+    // Vectors used during the operations that can't be computed in place
+    private final MutableBitVector scratch, mask;
+
+    /**
+     * Create a new LCD line of a given size, with all its pixels of color 0
+     * and transparent
+     * 
+     * @param size
+     *            The size in pixels of the line
+     * @throws IllegalArgumentException
+     *             if size is negative or not a multiple of 32
+     */
+    public MutableLcdImageLine(int size) {
+        msb = new MutableBitVector(size);
+        lsb = new MutableBitVector(size);
+        opacity = new MutableBitVector(size);
+        scratch = new MutableBitVector(size);
+        mask = new MutableBitVector(size);
+    }
+
+    /**
+     * Returns the number of pixel of the line
+     * 
+     * @return the number of pixel of the line
+     */
+    public int size() {
+        return msb.size();
+    }
+
+    /**
+     * Returns the vector containing the most significant bit of each pixel
+     * 
+     * @return the vector of the most significant bits, changed with the line
+     */
+    public MutableBitVector msb() {
+        return msb;
+    }
+
+    /**
+     * Returns the vector containing the least significant bit of each pixel
+     * 
+     * @return the vector of the least significant bits, changed with the line
+     */
+    public MutableBitVector lsb() {
+        return lsb;
+    }
+
+    /**
+     * Returns the vector containing the opacity of each pixel
+     * 
+     * @return the vector of the opacity, changed with the line
+     */
+    public MutableBitVector opacity() {
+        return opacity;
+    }
+
+    /**
+     * Set all the pixels of the line to the color 0, transparent
+     */
+    public void clear() {
+        msb.fill(false);
+        lsb.fill(false);
+        opacity.fill(false);
+    }
+
+    /**
+     * Set the 8 pixels at a given byte index, as LcdImageLine.Builder does:
+     * the pixels of color 0 are transparent
+     * 
+     * @param index
+     *            The index of the byte
+     * @param msbByte
+     *            The most significant bits of the colors
+     * @param lsbByte
+     *            The least significant bits of the colors
+     * @throws IndexOutOfBoundsException
+     *             if the index is invalid
+     * @throws IllegalArgumentException
+     *             if one of the bytes is not an 8 bits value
+     */
+    public void setBytes(int index, int msbByte, int lsbByte) {
+        msb.setByte(index, msbByte);
+        lsb.setByte(index, lsbByte);
+        opacity.setByte(index, msbByte | lsbByte);
+    }
+
+    /**
+     * Put 8 pixels below the line, starting at a given pixel: only the pixels
+     * of the line that are transparent take the color and opacity of the
+     * given ones. The pixels outside the line are ignored.
+     * 
+     * @param index
+     *            The index of the first pixel, from -7 to the size of the line
+     * @param msbByte
+     *            The most significant bits of the colors
+     * @param lsbByte
+     *            The least significant bits of the colors
+     * @param opacityByte
+     *            The opacity of the pixels
+     */
+    public void setBytesBelow(int index, int msbByte, int lsbByte, int opacityByte) {
+        int mask = opacityByte & ~opacity.byteAt(index);
+        msb.setBitsAt(index, msbByte, mask);
+        lsb.setBitsAt(index, lsbByte, mask);
+        opacity.setBitsAt(index, opacityByte, mask);
+    }
+
+    /**
+     * Store the line shifted by a given number of pixels in a given line of
+     * the same size, which must not be this one
+     * 
+     * @param distance
+     *            The number of pixels to shift, positive means left
+     * @param result
+     *            The line receiving the result
+     * @throws IllegalArgumentException
+     *             if the given line is this one or has not the same size
+     */
+    public void shiftInto(int distance, MutableLcdImageLine result) {
+        msb.shiftInto(distance, result.msb);
+        lsb.shiftInto(distance, result.lsb);
+        opacity.shiftInto(distance, result.opacity);
+    }
+
+    /**
+     * Store in a given line the sub-line starting at a given pixel, wrapped.
+     * The size of the sub-line is the size of the given line, which must not
+     * be this one.
+     * 
+     * @param startIndex
+     *            The index of the first pixel of the sub-line
+     * @param result
+     *            The line receiving the result
+     * @throws IllegalArgumentException
+     *             if the given line is this one
+     */
+    public void extractWrappedInto(int startIndex, MutableLcdImageLine result) {
+        msb.extractWrappedInto(startIndex, result.msb);
+        lsb.extractWrappedInto(startIndex, result.lsb);
+        opacity.extractWrappedInto(startIndex, result.opacity);
+    }
+
+    /**
+     * Store in a given line, which can be one of the operands, this line below
+     * a given line with a given opacity
+     * 
+     * @param line
+     *            The line above this line
+     * @param opacity
+     *            The opacity applied to the above line's pixels
+     * @param result
+     *            The line receiving the result
+     * @throws IllegalArgumentException
+     *             if the given line or opacity is not the same size as this line
+     */
+    public void belowInto(MutableLcdImageLine line, MutableBitVector opacity, MutableLcdImageLine result) {
+        msb.selectInto(line.msb, opacity, result.msb);
+        lsb.selectInto(line.lsb, opacity, result.lsb);
+        // Last, as "opacity" can be the opacity of the result
+        this.opacity.orInto(opacity, result.opacity);
+    }
+
+    /**
+     * Store in a given line, which can be one of the operands, this line below
+     * a given line with the given line opacity
+     * 
+     * @param line
+     *            The line above this line
+     * @param result
+     *            The line receiving the result
+     * @throws IllegalArgumentException
+     *             if the given line is not the same size as this line
+     */
+    public void belowInto(MutableLcdImageLine line, MutableLcdImageLine result) {
+        belowInto(line, line.opacity, result);
+    }
+
+    /**
+     * Store in a given line, which can be one of the operands, this line
+     * joined at a given pixel with a given line
+     * 
+     * @param juncPixel
+     *            From this pixel, the given line shifted by juncPixel is used
+     * @param line
+     *            The line used from the junction pixel
+     * @param result
+     *            The line receiving the result
+     * @throws IllegalArgumentException
+     *             if the lines have not the same size
+     */
+    public void joinInto(int juncPixel, MutableLcdImageLine line, MutableLcdImageLine result) {
+        // The pixels from the junction pixel
+        scratch.fill(true);
+        scratch.shiftInto(juncPixel, mask);
+
+        line.msb.shiftInto(juncPixel, scratch);
+        msb.selectInto(scratch, mask, result.msb);
+        line.lsb.shiftInto(juncPixel, scratch);
+        lsb.selectInto(scratch, mask, result.lsb);
+        line.opacity.shiftInto(juncPixel, scratch);
+        opacity.selectInto(scratch, mask, result.opacity);
+    }
+
+    /**
+     * Store in a given line, which can be this one, this line with its colors
+     * changed by a given palette
+     * 
+     * @param palette
+     *            the palette, giving the new color of each color in 2 bits
+     * @param result
+     *            The line receiving the result
+     * @throws IllegalArgumentException
+     *             if the palette is not an 8 bits value or if the given line
+     *             has not the same size
+     */
+    public void mapColorInto(int palette, MutableLcdImageLine result) {
+        Preconditions.checkBits8(palette);
+
+        int msbTable = 0, lsbTable = 0;
+        for (int i = 0; i < LcdImageLine.NUMBER_OF_COLORS; i++) {
+            if (Bits.test(palette, 2 * i + 1))
+                msbTable |= 1 << i;
+            if (Bits.test(palette, 2 * i))
+                lsbTable |= 1 << i;
+        }
+        // The new msb is needed until the new lsb is computed
+        MutableBitVector.combineInto(msb, lsb, msbTable, scratch);
+        MutableBitVector.combineInto(msb, lsb, lsbTable, result.lsb);
+        scratch.copyInto(result.msb);
+        opacity.copyInto(result.opacity);
+    }
+
+    /**
+     * Return a LcdImageLine with the current pixels of this line
+     * 
+     * @return a new LcdImageLine with the same pixels
+     */
+    public LcdImageLine toLcdImageLine() {
+        return new LcdImageLine(msb.toBitVector(), lsb.toBitVector(), opacity.toBitVector());
+    }
+}
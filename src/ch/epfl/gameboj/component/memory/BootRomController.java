@@ -57,4 +57,14 @@ public final class BootRomController implements Component {
         if (address == AddressMap.REG_BOOT_ROM_DISABLE) 
             isBootRomVisible = false;
     }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return address < AddressMap.BOOT_ROM_END 
+            || address == AddressMap.REG_BOOT_ROM_DISABLE
+            || cartridge.isMapped(address);
+    }
 }
@@ -26,6 +26,18 @@ public final class Ram {
         this.data = new byte[size];
     }
 
+    /**
+     * Create a new RAM with the same content as the given one.
+     * 
+     * @param that
+     *            the RAM to copy, not null
+     * @throws NullPointerException
+     *             if the given RAM is null
+     */
+    public Ram(Ram that) {
+        this.data = that.data.clone();
+    }
+
     /**
      * Returns the size (in bytes) of the RAM.
      * @return the size of the RAM
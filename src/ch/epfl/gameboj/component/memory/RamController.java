@@ -79,4 +79,12 @@ public final class RamController implements Component {
         Preconditions.checkBits8(data);
         if (address >= start && address < end) ram.write(address - start, data);
     }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#isMapped(int)
+     */
+    @Override
+    public boolean isMapped(int address) {
+        return address >= start && address < end;
+    }
 }
@@ -7,6 +7,7 @@ import ch.epfl.gameboj.Preconditions;
 import ch.epfl.gameboj.component.lcd.LcdController;
 import ch.epfl.gameboj.component.lcd.LcdImage;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 
 /**
@@ -55,12 +56,11 @@ public class ImageConverter {
         Preconditions.checkArgument(image.width() == LcdController.LCD_WIDTH);
         Preconditions.checkArgument(colorMap.length == GameBoy.DEFAULT_COLOR_MAP.length);
         WritableImage result = new WritableImage(LcdController.LCD_WIDTH, LcdController.LCD_HEIGHT);
+        int[] pixels = new int[LcdController.LCD_WIDTH * LcdController.LCD_HEIGHT];
         
-        for (int y = 0; y < LcdController.LCD_HEIGHT; y++) {
-            for (int x = 0; x < LcdController.LCD_WIDTH; x++) {
-                result.getPixelWriter().setArgb(x, y, colorMap[image.get(x, y)]);
-            }
-        }
+        image.writeArgb(pixels, colorMap);
+        result.getPixelWriter().setPixels(0, 0, LcdController.LCD_WIDTH, LcdController.LCD_HEIGHT, 
+                PixelFormat.getIntArgbInstance(), pixels, 0, LcdController.LCD_WIDTH);
         return result;
     }
 }
@@ -17,6 +17,7 @@ import javafx.event.EventHandler;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
@@ -62,6 +63,7 @@ public final class Menus {
     private final MenuItem blue  = new MenuItem("Bleu");
     private final MenuItem sepia = new MenuItem("Sepia");
     private final MenuItem size  = new MenuItem("Taille");
+    private final CheckMenuItem aluTables = new CheckMenuItem("Tables de l'UAL");
     
     private double currentScaleFactor;
     
@@ -88,7 +90,7 @@ public final class Menus {
       
         file.getItems().addAll(open, screenshot ,quit);
         colors.getItems().addAll(defaultColor, green, blue, sepia);
-        simulation.getItems().addAll(speed, colors, size);
+        simulation.getItems().addAll(speed, colors, size, aluTables);
         menuBar.getMenus().addAll(file, simulation);
         
         assignEvents();
@@ -115,6 +117,10 @@ public final class Menus {
             public void handle(ActionEvent t) {changeScreenSize();}
         });
         
+        aluTables.setOnAction(new EventHandler<ActionEvent>() {
+            public void handle(ActionEvent t) {gameboy.setAluLookupTables(aluTables.isSelected());}
+        });
+        
         screenshot.setOnAction(new EventHandler<ActionEvent>() { 
             public void handle(ActionEvent t) {screenShot();} 
         });
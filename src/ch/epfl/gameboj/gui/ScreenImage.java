@@ -0,0 +1,132 @@
+package ch.epfl.gameboj.gui;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+import ch.epfl.gameboj.component.lcd.LcdImageLine;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * This class represents a JavaFX image of the Gameboy screen, backed by a
+ * PixelBuffer that is updated in place with LcdImages
+ * 
+ * @author Corentin Junod (283214)
+ */
+public final class ScreenImage {
+    
+    private static final int WIDTH  = LcdController.LCD_WIDTH;
+    private static final int HEIGHT = LcdController.LCD_HEIGHT;
+
+    private final int[] shownPixels; // The pixels of the buffer
+    private final int[] newPixels;
+    private final int[] premultipliedColorMap;
+    private final PixelBuffer<IntBuffer> pixelBuffer;
+    private final WritableImage image;
+
+    /**
+     * Create a new image of the size of the Gameboy screen, initially
+     * transparent
+     */
+    public ScreenImage() {
+        shownPixels = new int[WIDTH * HEIGHT];
+        newPixels = new int[WIDTH * HEIGHT];
+        premultipliedColorMap = new int[LcdImageLine.NUMBER_OF_COLORS];
+        pixelBuffer = new PixelBuffer<>(WIDTH, HEIGHT, IntBuffer.wrap(shownPixels), 
+                PixelFormat.getIntArgbPreInstance());
+        image = new WritableImage(pixelBuffer);
+    }
+
+    /**
+     * Returns the JavaFX image, which is always the same and shows the last
+     * LcdImage given to update
+     * 
+     * @return the JavaFX image
+     */
+    public Image image() {
+        return image;
+    }
+
+    /**
+     * Show a given LcdImage with a given color map. Only the lines that changed
+     * since the last update are copied in the buffer of the image. Must be
+     * called on the JavaFX application thread.
+     * 
+     * @param lcdImage
+     *            The LcdImage to show
+     * @param colorMap
+     *            The ARGB colors of the 4 colors of the Gameboy
+     * @throws IllegalArgumentException
+     *             If the given image is not the same size as a Gameboy LCD
+     *             screen or the color map doesn't contain 4 colors
+     * @throws NullPointerException
+     *             if the given image or color map is null
+     */
+    public void update(LcdImage lcdImage, int[] colorMap) {
+        Objects.requireNonNull(lcdImage);
+        Preconditions.checkArgument(lcdImage.height() == HEIGHT && lcdImage.width() == WIDTH);
+        Preconditions.checkArgument(colorMap.length == premultipliedColorMap.length);
+
+        for (int i = 0; i < colorMap.length; i++)
+            premultipliedColorMap[i] = premultiply(colorMap[i]);
+        lcdImage.writeArgb(newPixels, premultipliedColorMap);
+
+        int first = 0, last = HEIGHT - 1;
+        while (first < HEIGHT && lineEquals(first))
+            first++;
+        if (first == HEIGHT)
+            return;
+        while (lineEquals(last))
+            last--;
+
+        int start = first * WIDTH, length = (last - first + 1) * WIDTH;
+        int dirtyY = first, dirtyHeight = last - first + 1;
+        pixelBuffer.updateBuffer(b -> {
+            System.arraycopy(newPixels, start, shownPixels, start, length);
+            return new Rectangle2D(0, dirtyY, WIDTH, dirtyHeight);
+        });
+    }
+
+    /**
+     * Show a blank screen, of the color 0 of a given color map, without
+     * converting any LcdImage. Must be called on the JavaFX application thread.
+     * 
+     * @param colorMap
+     *            The ARGB colors of the 4 colors of the Gameboy
+     * @throws IllegalArgumentException
+     *             If the color map doesn't contain 4 colors
+     */
+    public void clear(int[] colorMap) {
+        Preconditions.checkArgument(colorMap.length == premultipliedColorMap.length);
+
+        int color = premultiply(colorMap[0]);
+        pixelBuffer.updateBuffer(b -> {
+            Arrays.fill(shownPixels, color);
+            return null; // The whole image changed
+        });
+    }
+
+    private boolean lineEquals(int y) {
+        return Arrays.equals(shownPixels, y * WIDTH, (y + 1) * WIDTH, 
+                             newPixels,   y * WIDTH, (y + 1) * WIDTH);
+    }
+
+    // The PixelBuffer only supports colors with premultiplied alpha
+    private static int premultiply(int argb) {
+        int alpha = argb >>> 24;
+        if (alpha == 0xFF)
+            return argb;
+
+        int result = alpha << 24;
+        for (int shift = 0; shift < 24; shift += Byte.SIZE)
+            result |= ((argb >>> shift & 0xFF) * alpha + 0x7F) / 0xFF << shift;
+        return result;
+    }
+}
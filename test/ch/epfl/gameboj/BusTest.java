@@ -5,6 +5,7 @@ package ch.epfl.gameboj;
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -117,6 +118,44 @@ class BusTest {
                     () -> b.write(0, d));
         }
     }
+
+    @Test
+    void accessesAreOnlySentToMappedComponents() {
+        SimpleComponent mapped = new MappedComponent(0xFF40, 1);
+        SimpleComponent other = new MappedComponent(0xC000, 2);
+        Bus b = new Bus();
+        b.attach(other);
+        b.attach(mapped);
+        assertEquals(1, b.read(0xFF40));
+        b.write(0xFF40, 42);
+        assertEquals(42, b.read(0xFF40));
+        assertFalse(other.wasRead());
+        assertFalse(other.wasWritten());
+        assertEquals(0xFF, b.read(0xFF41));
+    }
+
+    @Test
+    void readReturnsValueOfFirstMappedComponent() {
+        Bus b = new Bus();
+        b.attach(new MappedComponent(0x1234, 1));
+        b.attach(new SimpleComponent(0x1234, 2));
+        b.attach(new MappedComponent(0x1234, 3));
+        assertEquals(1, b.read(0x1234));
+    }
+}
+
+class MappedComponent extends SimpleComponent {
+    private final int address;
+
+    public MappedComponent(int address, int initialValue) {
+        super(address, initialValue);
+        this.address = address;
+    }
+
+    @Override
+    public boolean isMapped(int a) {
+        return a == address;
+    }
 }
 
 class SimpleComponent implements Component {
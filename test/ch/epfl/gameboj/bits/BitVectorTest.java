@@ -2,6 +2,8 @@ package ch.epfl.gameboj.bits;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.Random;
+
 
 import org.junit.jupiter.api.Test;
 
@@ -87,5 +89,37 @@ public class BitVectorTest {
         
         
         
+    }
+    
+    @Test
+    void extractGivesTheBitsOfTheVector() {
+        Random rng = new Random(2018);
+        BitVector.Builder builder = new BitVector.Builder(256);
+        for (int i = 0; i < 32; i++)
+            builder.setByte(i, rng.nextInt(256));
+        BitVector v = builder.build();
+
+        for (int start = -300; start <= 300; start += 7) {
+            BitVector zeroExtended = v.extractZeroExtended(start, 160);
+            BitVector wrapped = v.extractWrapped(start, 160);
+            for (int i = 0; i < 160; i++) {
+                int index = start + i;
+                assertEquals(index >= 0 && index < 256 && v.testBit(index), zeroExtended.testBit(i));
+                assertEquals(v.testBit(Math.floorMod(index, 256)), wrapped.testBit(i));
+            }
+        }
+    }
+    
+    @Test
+    void combineAppliesTheTruthTable() {
+        BitVector high = new BitVector.Builder(32).setByte(0, 0b1100).build();
+        BitVector low  = new BitVector.Builder(32).setByte(0, 0b1010).build();
+
+        for (int table = 0; table < 16; table++) {
+            BitVector v = BitVector.combine(high, low, table);
+            for (int i = 0; i < 4; i++)
+                assertEquals(Bits.test(table, i), v.testBit(i));
+            assertEquals(Bits.test(table, 0), v.testBit(31));
+        }
     }
 }
@@ -0,0 +1,84 @@
+package ch.epfl.gameboj.bits;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class MutableBitVectorTest {
+
+    private static BitVector randomVector(Random rng, int size) {
+        BitVector.Builder builder = new BitVector.Builder(size);
+        for (int i = 0; i < size / Byte.SIZE; i++)
+            builder.setByte(i, rng.nextInt(256));
+        return builder.build();
+    }
+
+    @Test
+    void operationsGiveTheSameBitsAsBitVector() {
+        Random rng = new Random(2018);
+        BitVector a = randomVector(rng, 160), b = randomVector(rng, 160);
+        MutableBitVector ma = new MutableBitVector(a), mb = new MutableBitVector(b);
+        MutableBitVector result = new MutableBitVector(160);
+
+        ma.andInto(mb, result);
+        assertEquals(a.and(b).toString(), result.toString());
+        ma.orInto(mb, result);
+        assertEquals(a.or(b).toString(), result.toString());
+        ma.notInto(result);
+        assertEquals(a.not().toString(), result.toString());
+
+        for (int distance = -170; distance <= 170; distance += 13) {
+            ma.shiftInto(distance, result);
+            assertEquals(a.shift(distance).toString(), result.toString());
+        }
+        for (int start = -300; start <= 300; start += 17) {
+            ma.extractWrappedInto(start, result);
+            assertEquals(a.extractWrapped(start, 160).toString(), result.toString());
+            ma.extractZeroExtendedInto(start, result);
+            assertEquals(a.extractZeroExtended(start, 160).toString(), result.toString());
+        }
+        for (int table = 0; table < 16; table++) {
+            MutableBitVector.combineInto(ma, mb, table, result);
+            assertEquals(BitVector.combine(a, b, table).toString(), result.toString());
+        }
+    }
+
+    @Test
+    void operationsWorkInPlace() {
+        MutableBitVector v = new MutableBitVector(64);
+        MutableBitVector mask = new MutableBitVector(64);
+        v.setByte(0, 0b1010_1010);
+        mask.setByte(0, 0b1111_0000);
+
+        v.andInto(mask, v);
+        assertEquals("00000000000000000000000010100000", v.toBitVector().extractZeroExtended(0, 32).toString());
+        v.notInto(v);
+        assertEquals("11111111111111111111111101011111", v.toBitVector().extractZeroExtended(0, 32).toString());
+    }
+
+    @Test
+    void extractionsFailInPlace() {
+        MutableBitVector v = new MutableBitVector(64);
+        assertThrows(IllegalArgumentException.class, () -> v.shiftInto(3, v));
+        assertThrows(IllegalArgumentException.class, () -> v.extractWrappedInto(3, v));
+    }
+
+    @Test
+    void bitsCanBeSetAtAnyIndex() {
+        MutableBitVector v = new MutableBitVector(64);
+        v.setBitsAt(28, 0b1111_1111, 0b0011_1100);
+        assertEquals(0b1111, v.byteAt(30));
+        assertEquals(0b1100_0000, v.byteAt(24));
+        assertEquals(0b11, v.byteAt(32));
+
+        // The bits outside the vector are ignored
+        v.setBitsAt(-4, 0b1111_1111, 0b1111_1111);
+        v.setBitsAt(60, 0b1111_1111, 0b1111_1111);
+        assertEquals(0b1111_0000, v.byteAt(-4));
+        assertEquals(0b1111, v.byteAt(60));
+        assertEquals(0b1111, v.byteAt(0));
+    }
+}
@@ -159,4 +159,44 @@ public final class TimerTest implements ComponentTest {
             assertEquals(t.read(0xFF05), tma);
         }
     }
+    
+    @Test
+    void cycleCatchesUpSkippedCycles() {
+        for (int tac = 0b100; tac <= 0b111; ++tac) {
+            Timer t1 = newComponent(), t2 = newComponent();
+            t1.write(0xFF07, tac);
+            t2.write(0xFF07, tac);
+            for (int c = 0; c < 2027; ++c) {
+                t1.cycle(c);
+                if (c % 37 == 0) {
+                    t2.cycle(c);
+                    assertEquals(t1.read(0xFF04), t2.read(0xFF04));
+                    assertEquals(t1.read(0xFF05), t2.read(0xFF05));
+                }
+            }
+        }
+    }
+    
+    @Test
+    void nextEventCycleIsTheOverflowOfTima() {
+        Cpu cpu = new Cpu();
+        Timer t = new Timer(cpu);
+        t.write(0xFF07, 0b101);
+        t.write(0xFF05, 0xF0);
+        t.cycle(0);
+        long overflow = t.nextEventCycle(0);
+        t.cycle(overflow - 1);
+        assertEquals(0xFF, t.read(0xFF05));
+        assertEquals(0, cpu.read(0xFF0F));
+        t.cycle(overflow);
+        assertEquals(0, t.read(0xFF05));
+        assertEquals(Bits.mask(Cpu.Interrupt.TIMER.index()), cpu.read(0xFF0F));
+    }
+    
+    @Test
+    void nextEventCycleIsMaxValueWhenDisabled() {
+        Timer t = newComponent();
+        t.write(0xFF07, 0b011);
+        assertEquals(Long.MAX_VALUE, t.nextEventCycle(0));
+    }
 }
@@ -0,0 +1,18 @@
+package ch.epfl.gameboj.component.cpu;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+// Runs all the tests of AluTest, against the same reference data, with the lookup tables
+class AluLookupTablesTest extends AluTest {
+
+    @BeforeAll
+    static void enableLookupTables() {
+        Alu.setLookupTables(true);
+    }
+
+    @AfterAll
+    static void disableLookupTables() {
+        Alu.setLookupTables(false);
+    }
+}
@@ -0,0 +1,372 @@
+package ch.epfl.gameboj.component.cpu;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Register;
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
+
+public class CpuTestPersonal4 {
+
+    private enum RegList implements Register {
+       PC,SP,A,F,B,C,D,E,H,L
+    }
+
+    private static final int MAX_CYCLES = 1000;
+
+    private Bus connect(Cpu cpu, Ram ram) {
+        RamController rc = new RamController(ram, 0);
+        Bus b = new Bus();
+        cpu.attachTo(b);
+        rc.attachTo(b);
+        return b;
+    }
+
+    // A program that rewrites the operand of its first instruction, then
+    // halts once the new operand was executed
+    private byte[] selfModifyingProgram(int start) {
+        return new byte[] {
+                (byte)0x3E, (byte)0x11,                           // LD A, 0x11
+                (byte)0xFE, (byte)0x22,                           // CP A, 0x22
+                (byte)0x28, (byte)0x08,                           // JR Z, +8
+                (byte)0x3E, (byte)0x22,                           // LD A, 0x22
+                (byte)0xEA, (byte)(start + 1), (byte)(start >> 8), // LD (start + 1), A
+                (byte)0xC3, (byte)start, (byte)(start >> 8),       // JP start
+                (byte)0x76                                        // HALT
+        };
+    }
+
+    private void writeProgram(Bus b, int start, byte[] program) {
+        for (int i = 0; i < program.length; i++) {
+            b.write(start + i, Bits.clip(8, program[i]));
+        }
+    }
+
+    private void runUntilPc(Cpu c, int pc) {
+        for (int i = 0; i < MAX_CYCLES && c._testGetPcSpAFBCDEHL()[RegList.PC.index()] != pc; i++) {
+            c.cycle(i);
+        }
+    }
+
+    @Test
+    void writesInWorkRamInvalidateDecodedInstructions() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+
+        writeProgram(b, 0, new byte[] { (byte)0xC3, (byte)0x00, (byte)0xC0 }); // JP 0xC000
+        byte[] program = selfModifyingProgram(0xC000);
+        writeProgram(b, 0xC000, program);
+
+        runUntilPc(c, 0xC000 + program.length);
+        assertEquals(0xC000 + program.length, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x22, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+    }
+
+    @Test
+    void writesInCartridgeAreaInvalidateDecodedInstructions() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+
+        byte[] program = selfModifyingProgram(0);
+        writeProgram(b, 0, program);
+
+        runUntilPc(c, program.length);
+        assertEquals(program.length, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x22, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+    }
+
+    @Test
+    void writesInEchoRamInvalidateDecodedInstructions() {
+        Cpu c = new Cpu();
+        Ram r = new Ram(0xFFFF);
+        Bus b = connect(c, r);
+
+        writeProgram(b, 0, new byte[] { (byte)0xC3, (byte)0x00, (byte)0xC0 }); // JP 0xC000
+        byte[] program = selfModifyingProgram(0xC000);
+        program[9] = (byte)0x01;
+        program[10] = (byte)0xE0; // LD (0xE001), A
+        writeProgram(b, 0xC000, program);
+
+        // Echo the writes at 0xE000 onto the work RAM, as the Gameboy does
+        b.attach(new Component() {
+            @Override
+            public int read(int address) {
+                return NO_DATA;
+            }
+            @Override
+            public void write(int address, int data) {
+                if (address >= 0xE000 && address < 0xFE00)
+                    r.write(address - 0x2000, data);
+            }
+        });
+
+        runUntilPc(c, 0xC000 + program.length);
+        assertEquals(0xC000 + program.length, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x22, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+    }
+
+    @Test
+    void blocksModeExecutesFollowingInstructionsInOneCycle() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+        c.setExecutionMode(Cpu.ExecutionMode.BLOCKS);
+
+        writeProgram(b, 0, new byte[] {
+                (byte)0x3E, (byte)0x11, // LD A, 0x11
+                (byte)0x3C,             // INC A
+                (byte)0x3C,             // INC A
+                (byte)0x76              // HALT
+        });
+
+        c.cycle(0, Long.MAX_VALUE);
+        assertEquals(4, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x13, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+    }
+
+    @Test
+    void blocksModeStopsBeforeAccessingClockedMemory() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+        c.setExecutionMode(Cpu.ExecutionMode.BLOCKS);
+
+        writeProgram(b, 0, new byte[] {
+                (byte)0x3E, (byte)0x11, // LD A, 0x11
+                (byte)0xE0, (byte)0x80, // LD (0xFF80), A
+                (byte)0xE0, (byte)0x42, // LD (0xFF42), A
+                (byte)0x3C              // INC A
+        });
+
+        c.cycle(0, Long.MAX_VALUE);
+        assertEquals(4, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x11, b.read(0xFF80));
+        assertEquals(0, b.read(0xFF42));
+    }
+
+    @Test
+    void blocksModeStopsAtLimit() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+        c.setExecutionMode(Cpu.ExecutionMode.BLOCKS);
+
+        writeProgram(b, 0, new byte[] {
+                (byte)0x3E, (byte)0x11, // LD A, 0x11
+                (byte)0x3C,             // INC A
+                (byte)0x3C              // INC A
+        });
+
+        c.cycle(0, 3);
+        assertEquals(3, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x12, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+    }
+
+    @Test
+    void instructionsModeExecutesOneInstructionPerCycle() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+
+        writeProgram(b, 0, new byte[] {
+                (byte)0x3E, (byte)0x11, // LD A, 0x11
+                (byte)0x3C              // INC A
+        });
+
+        c.cycle(0, Long.MAX_VALUE);
+        assertEquals(2, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x11, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+    }
+
+    @Test
+    void haltedCpuIsIdleUntilAnInterruptIsRequested() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+
+        writeProgram(b, 0, new byte[] {
+                (byte)0x3E, (byte)0x04,             // LD A, 0x04
+                (byte)0xEA, (byte)0xFF, (byte)0xFF, // LD (0xFFFF), A
+                (byte)0x76,                         // HALT
+                (byte)0x3C                          // INC A
+        });
+
+        long cycle = 0;
+        for (; cycle < 7; cycle++)
+            c.cycle(cycle);
+        assertEquals(6, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(Long.MAX_VALUE, c.nextEventCycle(cycle));
+
+        c.requestInterrupt(Cpu.Interrupt.TIMER);
+        assertEquals(cycle + 1, c.nextEventCycle(cycle));
+        c.cycle(cycle + 1);
+        assertEquals(7, c._testGetPcSpAFBCDEHL()[RegList.PC.index()]);
+        assertEquals(0x05, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+    }
+
+    @Test
+    void busyWaitLoopIsSkippedWithTheSameTiming() {
+        byte[] program = new byte[] {
+                (byte)0xF0, (byte)0x80, // LD A, (0xFF80)
+                (byte)0xA7,             // AND A, A
+                (byte)0x28, (byte)0xFB  // JR Z, -5
+        };
+
+        Cpu stepped = new Cpu();
+        writeProgram(connect(stepped, new Ram(0xFFFF)), 0, program);
+        for (long cycle = 0; cycle < 1000; cycle++)
+            stepped.cycle(cycle);
+
+        Cpu skipped = new Cpu();
+        writeProgram(connect(skipped, new Ram(0xFFFF)), 0, program);
+        skipped.setExecutionMode(Cpu.ExecutionMode.BLOCKS);
+        skipped.cycle(0, 1000);
+
+        assertEquals(stepped.nextEventCycle(999), skipped.nextEventCycle(999));
+        assertArrayEquals(stepped._testGetPcSpAFBCDEHL(), skipped._testGetPcSpAFBCDEHL());
+    }
+
+    @Test
+    void loopPollingLyIsSkippedWithTheSameTiming() {
+        byte[] program = new byte[] {
+                (byte)0xF0, (byte)0x44, // LD A, (LY)
+                (byte)0xFE, (byte)0x90, // CP A, 144
+                (byte)0x20, (byte)0xFA, // JR NZ, -6
+                (byte)0xF0, (byte)0x44, // LD A, (LY)
+                (byte)0x47,             // LD B, A
+                (byte)0x76              // HALT
+        };
+        long[] results = new long[2];
+        int[][] states = new int[2][];
+
+        for (int run = 0; run < 2; run++) {
+            Cpu c = new Cpu();
+            LcdController lcd = new LcdController(c);
+            Bus b = connect(c, new Ram(0x8000));
+            lcd.attachTo(b);
+            writeProgram(b, 0, program);
+            b.write(0xFF40, 0x80); // LCDC: LCD on
+
+            if (run == 0) {
+                for (long cycle = 0; cycle < 20000; cycle++) {
+                    lcd.cycle(cycle);
+                    c.cycle(cycle);
+                }
+            } else {
+                // As GameBoy.runUntil, the LCD controller being only clocked on its interrupts
+                c.setExecutionMode(Cpu.ExecutionMode.BLOCKS);
+                long lcdCycle = 0;
+                for (long cycle = 0; cycle < 20000; ) {
+                    if (cycle >= lcdCycle)
+                        lcd.cycle(cycle);
+                    c.cycle(cycle, Math.min(20000, lcd.nextEventCycle(cycle)));
+                    lcdCycle = lcd.nextEventCycle(cycle);
+                    cycle = Math.min(20000, Math.min(lcdCycle, c.nextEventCycle(cycle)));
+                }
+            }
+            results[run] = lcd.nextEventCycle(20000);
+            states[run] = c._testGetPcSpAFBCDEHL();
+        }
+        assertEquals(0x90, states[0][RegList.B.index()]);
+        assertArrayEquals(states[0], states[1]);
+        assertEquals(results[0], results[1]);
+    }
+
+    @Test
+    void deferredFlagsArePushedWithA() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+
+        writeProgram(b, 0, new byte[] {
+                (byte)0x31, (byte)0x00, (byte)0xD0, // LD SP, 0xD000
+                (byte)0x3E, (byte)0x88,             // LD A, 0x88
+                (byte)0xC6, (byte)0x88,             // ADD A, 0x88
+                (byte)0xF5,                         // PUSH AF
+                (byte)0xC1                          // POP BC
+        });
+
+        runUntilPc(c, 9);
+        assertEquals(0x10, c._testGetPcSpAFBCDEHL()[RegList.B.index()]);
+        assertEquals(0b0011_0000, c._testGetPcSpAFBCDEHL()[RegList.C.index()]);
+    }
+
+    @Test
+    void stateCanBeImportedAndExported() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+
+        writeProgram(b, 0x1234, new byte[] {
+                (byte)0x09,             // ADD HL, BC
+                (byte)0xC5,             // PUSH BC
+                (byte)0xF1              // POP AF
+        });
+
+        CpuState state = CpuState.of(0x1234, 0xD000, 0x11_F0_FF_FF_33_44_00_01L);
+        c._testSetPcSpAFBCDEHL(state.toArray());
+        assertArrayEquals(state.toArray(), c._testGetPcSpAFBCDEHL());
+
+        runUntilPc(c, 0x1237);
+        assertArrayEquals(CpuState.of(0x1237, 0xD000, 0xFF_F0_FF_FF_33_44_00_00L).toArray(),
+                c._testGetPcSpAFBCDEHL());
+    }
+
+    @Test
+    void onlyHighRamIsReachableDuringDma() {
+        Cpu c = new Cpu();
+        Bus b = connect(c, new Ram(0xFFFF));
+
+        writeProgram(b, 0xFF80, new byte[] {
+                (byte)0xFA, (byte)0x00, (byte)0xC0, // LD A, (0xC000)
+                (byte)0xE0, (byte)0x9F,             // LD (0xFF9F), A
+                (byte)0xEA, (byte)0x02, (byte)0xC0, // LD (0xC002), A
+                (byte)0x06, (byte)0x32,             // LD B, 50
+                (byte)0x05,                         // DEC B
+                (byte)0x20, (byte)0xFD,             // JR NZ, -3
+                (byte)0xFA, (byte)0x00, (byte)0xC0, // LD A, (0xC000)
+                (byte)0xEA, (byte)0x01, (byte)0xC0  // LD (0xC001), A
+        });
+        b.write(0xC000, 0x42);
+        c._testSetPcSpAFBCDEHL(CpuState.of(0xFF80, 0xD000, 0).toArray());
+
+        c.startDmaTransfer();
+        runUntilPc(c, 0xFF93);
+        assertEquals(0xFF, b.read(0xFF9F));
+        assertEquals(0, b.read(0xC002));
+        assertEquals(0x42, c._testGetPcSpAFBCDEHL()[RegList.A.index()]);
+        assertEquals(0x42, b.read(0xC001));
+    }
+
+    @Test
+    void lcdControllerCanBeAccessedWhileHalted() {
+        Cpu c = new Cpu();
+        LcdController lcd = new LcdController(c);
+        Bus b = new Bus();
+        c.attachTo(b);
+        lcd.attachTo(b);
+        new RamController(new Ram(0x2000), 0xC000).attachTo(b);
+
+        writeProgram(b, 0xC000, new byte[] {
+                (byte)0xFB, // EI
+                (byte)0x76, // HALT
+                (byte)0x76  // HALT
+        });
+        // The interrupt pushes PC in the OAM
+        c._testSetPcSpAFBCDEHL(CpuState.of(0xC000, 0xFE10, 0).toArray());
+        b.write(0xFF40, 0x80); // LCDC: LCD on
+        b.write(0xFFFF, 0x01); // IE: vertical blank
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (long cycle = 0; cycle < 2 * 17556; cycle++) {
+                lcd.cycle(cycle);
+                c.cycle(cycle);
+                assertEquals(lcd.read(0xFF44), b.read(0xFF44));
+            }
+        });
+        assertEquals(0xC002, Bits.make16(b.read(0xFE0F), b.read(0xFE0E)));
+    }
+}
@@ -0,0 +1,75 @@
+package ch.epfl.gameboj.component.cpu;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.component.Component;
+
+// Runs the cycles of the programs of S4CpuTest and S5CpuTest, either one at a
+// time as a GameBoy without the BLOCKS execution mode does, or in the BLOCKS
+// execution mode with a single limit for the whole run
+final class CycleRunner {
+    // The memory that the test programs can change: work RAM, I/O, high RAM
+    private static final int RAM_START = 0xC000;
+
+    private static boolean blocks = false;
+
+    private CycleRunner() {}
+
+    static void setBlocks(boolean enabled) {
+        blocks = enabled;
+    }
+
+    // Runs the cycles from "start" (included) to "end" (excluded). In the
+    // BLOCKS mode, the run of a new processor is first done by a reference
+    // processor one cycle at a time, and both must end with the same
+    // registers and memory
+    static void run(Bus bus, Cpu cpu, long start, long end) {
+        if (!blocks) {
+            for (long c = start; c < end; ++c)
+                cpu.cycle(c);
+            return;
+        }
+
+        if (start == 0) {
+            // Both processors receive the writes of the other one, so the
+            // memory is written back before each run
+            int[] memory = memory(bus, cpu);
+            Cpu reference = new Cpu();
+            reference.attachTo(bus);
+            write(bus, memory);
+            for (long c = 0; c < end; ++c)
+                reference.cycle(c);
+            int[] referenceMemory = memory(bus, reference);
+
+            write(bus, memory);
+            runBlocks(cpu, 0, end);
+            assertArrayEquals(reference._testGetPcSpAFBCDEHL(), cpu._testGetPcSpAFBCDEHL());
+            assertArrayEquals(referenceMemory, memory(bus, cpu));
+        } else {
+            runBlocks(cpu, start, end);
+        }
+    }
+
+    private static void runBlocks(Cpu cpu, long start, long end) {
+        cpu.setExecutionMode(Cpu.ExecutionMode.BLOCKS);
+        for (long c = start; c < end; c = Math.max(c + 1, cpu.nextEventCycle(c)))
+            cpu.cycle(c, end);
+    }
+
+    private static void write(Bus bus, int[] memory) {
+        for (int a = RAM_START; a <= 0xFFFF; ++a)
+            bus.write(a, memory[a - RAM_START]);
+    }
+
+    // The memory as seen by the given processor, which has its own high RAM
+    // and interrupt registers
+    private static int[] memory(Bus bus, Cpu cpu) {
+        int[] memory = new int[0x10000 - RAM_START];
+        for (int a = RAM_START; a <= 0xFFFF; ++a) {
+            int value = cpu.read(a);
+            memory[a - RAM_START] = value != Component.NO_DATA ? value : bus.read(a);
+        }
+        return memory;
+    }
+}
@@ -0,0 +1,19 @@
+package ch.epfl.gameboj.component.cpu;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+
+// Runs all the programs of S4CpuTest in the BLOCKS execution mode, with a single
+// limit for each run, and checks them against a run one cycle at a time
+class S4CpuBlocksTest extends S4CpuTest {
+
+    @BeforeAll
+    static void enableBlocks() {
+        CycleRunner.setBlocks(true);
+    }
+
+    @AfterAll
+    static void disableBlocks() {
+        CycleRunner.setBlocks(false);
+    }
+}
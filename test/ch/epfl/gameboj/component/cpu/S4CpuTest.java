@@ -1890,8 +1890,7 @@ public class S4CpuTest {
         cpu.attachTo(bus);
         for (Component c2: components)
             c2.attachTo(bus);
-        for (int i = 0; i < prog.cycles(); ++i)
-            cpu.cycle(i);
+        CycleRunner.run(bus, cpu, 0, prog.cycles());
         return CpuState.ofArray(cpu._testGetPcSpAFBCDEHL());
     }
 
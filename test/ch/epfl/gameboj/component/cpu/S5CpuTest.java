@@ -17,7 +17,7 @@ import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.cpu.Assembler.Program;
 
-public final class S5CpuTest {
+public class S5CpuTest {
     // Jumps
     @Test
     void jpHlWorks() {
@@ -549,8 +549,10 @@ public final class S5CpuTest {
         }
 
         public void cycleUntil(long c) {
-            while (cycle < c)
-                cpu.cycle(cycle++);
+            if (cycle < c) {
+                CycleRunner.run(bus, cpu, cycle, c);
+                cycle = c;
+            }
         }
 
         public CpuState cpuState() {
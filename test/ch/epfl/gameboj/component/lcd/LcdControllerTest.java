@@ -0,0 +1,275 @@
+package ch.epfl.gameboj.component.lcd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.component.cpu.Cpu;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
+
+public class LcdControllerTest {
+
+    private static final int CYCLES_PER_FRAME = 17556;
+    private static final LcdImage BLANK_IMAGE =
+            new LcdImage.Builder(LcdController.LCD_WIDTH, LcdController.LCD_HEIGHT).build();
+
+    private long cycle = 0;
+
+    // Creates a LcdController showing the tile 0 everywhere, with its first row opaque
+    private LcdController newLcdController() {
+        Cpu cpu = new Cpu();
+        LcdController lcd = new LcdController(cpu);
+        Bus bus = new Bus();
+        cpu.attachTo(bus);
+        lcd.attachTo(bus);
+
+        bus.write(0x8000, 0xFF);
+        bus.write(0xFF47, 0b11_10_01_00); // BGP
+        bus.write(0xFF40, 0b1001_0001);   // LCDC: LCD, tiles at 0x8000 and background on
+        return lcd;
+    }
+
+    private void runFrames(LcdController lcd, int frames) {
+        for (long end = cycle + frames * CYCLES_PER_FRAME; cycle < end; cycle++)
+            lcd.cycle(cycle);
+    }
+
+    @Test
+    void framesAreRenderedByDefault() {
+        LcdController lcd = newLcdController();
+        runFrames(lcd, 1);
+        assertNotEquals(BLANK_IMAGE, lcd.currentImage());
+        assertEquals(1, lcd.currentImage().get(0, 0));
+        assertEquals(0, lcd.currentImage().get(0, 1));
+    }
+
+    @Test
+    void noFrameIsRenderedWithAnIntervalOf0() {
+        LcdController lcd = newLcdController();
+        lcd.setRenderedFrames(0);
+        runFrames(lcd, 3);
+        assertEquals(BLANK_IMAGE, lcd.currentImage());
+    }
+
+    @Test
+    void requestedFrameIsRendered() {
+        LcdController lcd = newLcdController();
+        lcd.setRenderedFrames(0);
+        runFrames(lcd, 2);
+        lcd.requestFrame();
+        runFrames(lcd, 2);
+        assertEquals(1, lcd.currentImage().get(0, 0));
+    }
+
+    @Test
+    void oneFrameOutOfIntervalIsRendered() {
+        LcdController lcd = newLcdController();
+        lcd.setRenderedFrames(3);
+        runFrames(lcd, 1);
+        LcdImage first = lcd.currentImage();
+        assertEquals(1, first.get(0, 0));
+
+        lcd.cycle(cycle); // Changes the color of the tile
+        lcd.write(0x8000, 0x00);
+        lcd.write(0x8001, 0xFF);
+
+        runFrames(lcd, 2);
+        assertEquals(first, lcd.currentImage());
+        runFrames(lcd, 1);
+        assertEquals(2, lcd.currentImage().get(0, 0));
+    }
+
+    @Test
+    void unchangedFramesReuseTheImage() {
+        LcdController lcd = newLcdController();
+        runFrames(lcd, 2);
+        LcdImage image = lcd.currentImage();
+
+        lcd.write(0xFF47, 0b11_10_01_00); // Same BGP
+        lcd.write(0x8000, 0xFF);          // Same tile
+        runFrames(lcd, 3);
+        assertSame(image, lcd.currentImage());
+    }
+
+    @Test
+    void changeDuringAReusedFrameKeepsThePreviousLines() {
+        LcdController lcd = newLcdController();
+        runFrames(lcd, 2);
+        LcdImage image = lcd.currentImage();
+
+        runFrames(lcd, 1);
+        while (lcd.read(0xFF44) != 80) // LY
+            lcd.cycle(cycle++);
+        lcd.write(0xFF47, 0b11_10_00_01); // Swaps the colors 0 and 1
+        runFrames(lcd, 1);
+
+        assertNotSame(image, lcd.currentImage());
+        for (int y = 0; y < LcdController.LCD_HEIGHT; y++) {
+            boolean changed = y >= 80;
+            int firstRow = y % 8 == 0 ? 1 : 0;
+            assertEquals(changed ? 1 - firstRow : firstRow, lcd.currentImage().get(0, y));
+        }
+    }
+
+    @Test
+    void parallelRenderingGivesTheSameImages() {
+        LcdController sequential = newLcdController();
+        LcdController parallel = newLcdController();
+        parallel.setParallelRendering(true);
+
+        for (int frame = 0; frame < 4; frame++) {
+            for (long end = cycle + CYCLES_PER_FRAME; cycle < end; cycle++) {
+                for (LcdController lcd : new LcdController[] { sequential, parallel }) {
+                    lcd.cycle(cycle);
+                    int line = lcd.read(0xFF44); // LY
+                    if (cycle % 500 == 0) {
+                        lcd.write(0xFF43, (line * 3 + frame) % 256); // SCX
+                        lcd.write(0x8000 + line % 16, line);         // Tile 0
+                        lcd.write(0xFE00 + line % 160, line);        // Sprites
+                    }
+                    if (line == 40 + frame)
+                        lcd.write(0xFF40, 0b1001_0011 | (frame % 2) << 2); // LCDC: sprites on
+                }
+            }
+            assertEquals(sequential.currentImage(), parallel.currentImage());
+        }
+        assertNotEquals(BLANK_IMAGE, parallel.currentImage());
+    }
+
+    @Test
+    void parallelRenderingFollowsSpriteSizeChangesDuringAFrame() {
+        LcdController sequential = newLcdController();
+        LcdController parallel = newLcdController();
+        parallel.setParallelRendering(true);
+        for (LcdController lcd : new LcdController[] { sequential, parallel }) {
+            for (int i = 0; i < 32; i += 2)
+                lcd.write(0x8020 + i, 0xFF);  // Tiles 2 and 3: color 1
+            lcd.write(0xFE00, 16);            // Sprite 0 on the lines 0 to 15
+            lcd.write(0xFE01, 8);
+            lcd.write(0xFE02, 2);
+            lcd.write(0xFF48, 0b11_10_01_00); // OBP0
+        }
+
+        for (int frame = 0; frame < 3; frame++) {
+            for (long end = cycle + CYCLES_PER_FRAME; cycle < end; cycle++) {
+                for (LcdController lcd : new LcdController[] { sequential, parallel }) {
+                    lcd.cycle(cycle);
+                    int line = lcd.read(0xFF44); // LY
+                    // LCDC: sprites of 8x8 pixels on the lines 10 and 11 only
+                    lcd.write(0xFF40, line == 10 || line == 11 ? 0b1001_0011 : 0b1001_0111);
+                }
+            }
+            assertEquals(sequential.currentImage(), parallel.currentImage());
+        }
+        assertEquals(0, sequential.currentImage().get(0, 10));
+        assertEquals(1, sequential.currentImage().get(0, 12));
+    }
+
+    @Test
+    void changesOfTheTilesAreDrawnAfterAFrame() {
+        LcdController lcd = newLcdController();
+        lcd.write(0x8011, 0xF0); // Tile 1
+        runFrames(lcd, 2);
+        LcdImage before = lcd.currentImage();
+
+        LcdController reference = newLcdController();
+        reference.write(0x8011, 0xF0);
+        for (LcdController l : new LcdController[] { lcd, reference }) {
+            l.write(0x9801, 1);    // Tile map 0: tile 1 at (1, 0)
+            l.write(0x9C21, 1);    // Tile map 1: tile 1 at (1, 1)
+            l.write(0x8003, 0x3C); // Tile 0, second row
+            l.write(0xFF43, 3);    // SCX
+        }
+
+        runFrames(lcd, 2);
+        runFrames(reference, 2);
+        assertEquals(reference.currentImage(), lcd.currentImage());
+        assertNotEquals(before, lcd.currentImage());
+
+        // The other tile map and tile source
+        for (LcdController l : new LcdController[] { lcd, reference }) {
+            l.write(0xFF40, 0b1000_1001); // LCDC: tile map 1, tiles at 0x8800
+            l.write(0x9C20, 0x81);
+            l.write(0x8811, 0xFF);        // Tile 0x81
+        }
+        runFrames(lcd, 2);
+        runFrames(reference, 2);
+        assertEquals(reference.currentImage(), lcd.currentImage());
+    }
+
+    @Test
+    void onlyTheInterruptsAreScheduled() {
+        LcdController lcd = newLcdController();
+        lcd.cycle(0);
+        // The vertical blank starts at the mode 0 of the line 143
+        assertEquals(143 * 114 + 20 + 43, lcd.nextEventCycle(0));
+
+        lcd.write(0xFF41, 0b0000_1000); // STAT: mode 0 interrupt
+        assertEquals(20 + 43, lcd.nextEventCycle(0));
+        lcd.write(0xFF41, 0b0100_0000); // STAT: LYC interrupt
+        lcd.write(0xFF45, 10);          // LYC
+        assertEquals(10 * 114, lcd.nextEventCycle(0));
+    }
+
+    @Test
+    void modesCatchUpOnTheSkippedCycles() {
+        LcdController everyCycle = newLcdController();
+        LcdController onEvents = newLcdController();
+        long end = 3 * CYCLES_PER_FRAME + 1000;
+
+        for (long c = 0; c < end; c++)
+            everyCycle.cycle(c);
+        for (long c = 0; c < end; c = onEvents.nextEventCycle(c))
+            onEvents.cycle(c);
+        onEvents.cycle(end - 1);
+
+        assertEquals(everyCycle.read(0xFF44), onEvents.read(0xFF44)); // LY
+        assertEquals(everyCycle.read(0xFF41), onEvents.read(0xFF41)); // STAT
+        assertEquals(everyCycle.currentImage(), onEvents.currentImage());
+    }
+
+    @Test
+    void lcdOffLeavesTheSchedulerAndBlanksTheScreen() {
+        LcdController lcd = newLcdController();
+        assertTrue(lcd.isScreenBlank());
+        runFrames(lcd, 2);
+        assertFalse(lcd.isScreenBlank());
+        LcdImage image = lcd.currentImage();
+
+        lcd.write(0xFF40, 0b0001_0001); // LCDC: LCD off
+        assertTrue(lcd.isScreenBlank());
+        assertEquals(Long.MAX_VALUE, lcd.nextEventCycle(cycle));
+        runFrames(lcd, 1);
+        assertEquals(0, lcd.read(0xFF44)); // LY
+        assertSame(image, lcd.currentImage());
+
+        lcd.write(0xFF40, 0b1001_0001); // LCDC: LCD on
+        assertEquals(cycle + 1, lcd.nextEventCycle(cycle));
+        runFrames(lcd, 1);
+        assertFalse(lcd.isScreenBlank());
+    }
+
+    @Test
+    void dmaCopiesTheWholeBlockAtOnce() {
+        Cpu cpu = new Cpu();
+        LcdController lcd = new LcdController(cpu);
+        Bus bus = new Bus();
+        cpu.attachTo(bus);
+        lcd.attachTo(bus);
+        new RamController(new Ram(0x2000), 0xC000).attachTo(bus);
+
+        for (int i = 0; i < 0xA0; i++)
+            bus.write(0xC100 + i, i + 1);
+        bus.write(0xFF46, 0xC1); // DMA
+
+        for (int i = 0; i < 0xA0; i++)
+            assertEquals(i + 1, bus.read(0xFE00 + i));
+    }
+}
@@ -0,0 +1,125 @@
+package ch.epfl.gameboj.component.lcd;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class LcdImageTest {
+
+    private LcdImage image(int lineIndex, int msbByte, int lsbByte) {
+        LcdImage.Builder builder = new LcdImage.Builder(64, 3);
+        LcdImageLine.Builder line = new LcdImageLine.Builder(64);
+        line.setBytes(5, msbByte, lsbByte);
+        builder.setLine(lineIndex, line.build());
+        return builder.build();
+    }
+
+    @Test
+    void getReturnsTheColorsOfTheLines() {
+        LcdImage image = image(1, 0b0000_1100, 0b0000_1010);
+        assertEquals(0b00, image.get(40, 1));
+        assertEquals(0b01, image.get(41, 1));
+        assertEquals(0b10, image.get(42, 1));
+        assertEquals(0b11, image.get(43, 1));
+        for (int x = 0; x < 64; x++) {
+            assertEquals(0, image.get(x, 0));
+            assertEquals(0, image.get(x, 2));
+        }
+    }
+
+    @Test
+    void getFailsOutsideOfTheImage() {
+        LcdImage image = image(0, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> image.get(-1, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> image.get(64, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> image.get(0, 3));
+    }
+
+    @Test
+    void equalsAndHashCodeDependOnThePixels() {
+        assertEquals(image(2, 0xF0, 0x0F), image(2, 0xF0, 0x0F));
+        assertEquals(image(2, 0xF0, 0x0F).hashCode(), image(2, 0xF0, 0x0F).hashCode());
+        assertNotEquals(image(2, 0xF0, 0x0F), image(1, 0xF0, 0x0F));
+        assertNotEquals(image(2, 0xF0, 0x0F), image(2, 0xF0, 0x1F));
+    }
+
+    @Test
+    void contentHashDependsOnThePixels() {
+        assertEquals(image(2, 0xF0, 0x0F).contentHash(), image(2, 0xF0, 0x0F).contentHash());
+        assertNotEquals(image(2, 0xF0, 0x0F).contentHash(), image(2, 0xF0, 0x1F).contentHash());
+        assertNotEquals(image(2, 0xF0, 0x0F).contentHash(), image(1, 0xF0, 0x0F).contentHash());
+    }
+
+    @Test
+    void packedPixelsHaveTwoBitsPerPixel() {
+        long[] pixels = image(1, 0b0000_1100, 0b0000_1010).packedPixels();
+        assertEquals(3 * 2, pixels.length);
+        assertEquals(0b11_10_01_00L << 2 * (40 - 32), pixels[1 * 2 + 1]);
+    }
+
+    @Test
+    void imageOfTheControllerHasTheColorsOfItsArrays() {
+        int[] msb = new int[3 * 2], lsb = new int[3 * 2];
+        msb[3] = 0b1100;
+        lsb[3] = 0b1010;
+        LcdImage image = new LcdImage(64, 3, msb, lsb);
+        for (int x = 0; x < 4; x++)
+            assertEquals(x, image.get(32 + x, 1));
+
+        int[] msbCopy = new int[msb.length], lsbCopy = new int[lsb.length];
+        image.copyTo(msbCopy, lsbCopy);
+        assertArrayEquals(msb, msbCopy);
+        assertArrayEquals(lsb, lsbCopy);
+    }
+
+    @Test
+    void writeArgbWritesTheColorsOfThePixels() {
+        int[] colorMap = { 0xFF_00_00_00, 0xFF_11_11_11, 0xFF_22_22_22, 0xFF_33_33_33 };
+        LcdImage image = image(2, 0b1100_0110, 0b1010_0011);
+
+        int[] pixels = new int[64 * 3];
+        IntBuffer buffer = IntBuffer.allocate(64 * 3 + 1);
+        buffer.put(0);
+        image.writeArgb(pixels, colorMap);
+        image.writeArgb(buffer, colorMap);
+
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 64; x++) {
+                assertEquals(colorMap[image.get(x, y)], pixels[y * 64 + x]);
+                assertEquals(colorMap[image.get(x, y)], buffer.get(1 + y * 64 + x));
+            }
+        }
+    }
+
+    @Test
+    void writeArgbStopsAtTheWidthOfTheImage() {
+        int[] colorMap = { 0xFF_00_00_00, 0xFF_11_11_11, 0xFF_22_22_22, 0xFF_33_33_33 };
+        LcdImageLine.Builder builder = new LcdImageLine.Builder(64);
+        builder.setBytes(4, 0b1100_0110, 0b1010_0011);
+        LcdImageLine line = builder.build();
+        LcdImage image = new LcdImage(38, 2, Arrays.asList(line, line));
+
+        int[] pixels = new int[38 * 2];
+        image.writeArgb(pixels, colorMap);
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 38; x++)
+                assertEquals(colorMap[image.get(x, y)], pixels[y * 38 + x]);
+        }
+        assertEquals(colorMap[0b01], pixels[38 + 37]);
+    }
+
+    @Test
+    void writeArgbFailsOnTooSmallArrays() {
+        LcdImage image = image(0, 0, 0);
+        int[] colorMap = new int[4];
+        assertThrows(IllegalArgumentException.class, () -> image.writeArgb(new int[64 * 3 - 1], colorMap));
+        assertThrows(IllegalArgumentException.class, () -> image.writeArgb(IntBuffer.allocate(64 * 3 - 1), colorMap));
+        assertThrows(IllegalArgumentException.class, () -> image.writeArgb(new int[64 * 3], new int[3]));
+    }
+}
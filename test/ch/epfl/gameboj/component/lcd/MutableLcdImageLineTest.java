@@ -0,0 +1,85 @@
+package ch.epfl.gameboj.component.lcd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class MutableLcdImageLineTest {
+
+    private static final int SIZE = 160;
+
+    private final Random rng = new Random(2018);
+
+    // Sets the same random pixels in both lines
+    private LcdImageLine randomLines(MutableLcdImageLine mutable) {
+        LcdImageLine.Builder builder = new LcdImageLine.Builder(mutable.size());
+        for (int i = 0; i < mutable.size() / Byte.SIZE; i++) {
+            int msb = rng.nextInt(256), lsb = rng.nextInt(256);
+            builder.setBytes(i, msb, lsb);
+            mutable.setBytes(i, msb, lsb);
+        }
+        return builder.build();
+    }
+
+    private static void assertSameLine(LcdImageLine expected, MutableLcdImageLine actual) {
+        LcdImageLine line = actual.toLcdImageLine();
+        assertEquals(expected.msb().toString(), line.msb().toString());
+        assertEquals(expected.lsb().toString(), line.lsb().toString());
+        assertEquals(expected.opacity().toString(), line.opacity().toString());
+    }
+
+    @Test
+    void operationsGiveTheSameLinesAsLcdImageLine() {
+        MutableLcdImageLine a = new MutableLcdImageLine(SIZE), b = new MutableLcdImageLine(SIZE);
+        MutableLcdImageLine result = new MutableLcdImageLine(SIZE);
+        LcdImageLine la = randomLines(a), lb = randomLines(b);
+
+        for (int distance = -40; distance <= 200; distance += 9) {
+            a.shiftInto(distance, result);
+            assertSameLine(la.shift(distance), result);
+            a.extractWrappedInto(distance, result);
+            assertSameLine(la.extractWrapped(distance, SIZE), result);
+        }
+        for (int pixel = 0; pixel <= SIZE; pixel += 7) {
+            a.joinInto(pixel, b, result);
+            assertSameLine(la.join(pixel, lb), result);
+        }
+        for (int palette = 0; palette < 256; palette += 5) {
+            a.mapColorInto(palette, result);
+            assertSameLine(la.mapColor(palette), result);
+        }
+        a.belowInto(b, result);
+        assertSameLine(la.below(lb), result);
+    }
+
+    @Test
+    void operationsWorkInPlace() {
+        MutableLcdImageLine a = new MutableLcdImageLine(SIZE), b = new MutableLcdImageLine(SIZE);
+        LcdImageLine la = randomLines(a), lb = randomLines(b);
+
+        a.mapColorInto(0b00_01_10_11, a);
+        la = la.mapColor(0b00_01_10_11);
+        assertSameLine(la, a);
+
+        a.joinInto(37, b, a);
+        la = la.join(37, lb);
+        assertSameLine(la, a);
+
+        a.belowInto(b, a);
+        assertSameLine(la.below(lb), a);
+    }
+
+    @Test
+    void bytesBelowOnlyChangeTransparentPixels() {
+        MutableLcdImageLine line = new MutableLcdImageLine(SIZE);
+        line.setBytesBelow(-2, 0b1111_1111, 0, 0b0000_1111);
+        line.setBytesBelow(0, 0, 0b1111_1111, 0b1111_1111);
+
+        for (int x = 0; x < 8; x++)
+            assertEquals(x < 2 ? 0b10 : 0b01, (line.msb().testBit(x) ? 2 : 0) | (line.lsb().testBit(x) ? 1 : 0));
+        assertEquals(0b1111_1111, line.opacity().byteAt(0));
+        assertEquals(0, line.opacity().byteAt(8));
+    }
+}
@@ -0,0 +1,102 @@
+package ch.epfl.gameboj.debug;
+
+import java.util.Random;
+
+import ch.epfl.gameboj.bits.BitVector;
+import ch.epfl.gameboj.bits.Bits;
+
+/**
+ * Times the extractions of BitVector against the former implementation, which
+ * computed each word of the result with two recursive lookups, for the widths
+ * of a screen line (160) and of a background line (256).
+ *
+ * Run it without arguments; the number of iterations can be given as the
+ * first argument.
+ */
+public final class BitVectorTiming {
+
+    private static final int[] WIDTHS = { 160, 256 };
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        for (int width : WIDTHS)
+            time(width, iterations);
+    }
+
+    private static void time(int width, int iterations) {
+        Random random = new Random(width);
+        int[] words = new int[width / Integer.SIZE];
+        BitVector.Builder builder = new BitVector.Builder(width);
+        for (int i = 0; i < width / Byte.SIZE; i++) {
+            int b = random.nextInt(1 << Byte.SIZE);
+            builder.setByte(i, b);
+            words[i / Integer.BYTES] |= b << (i % Integer.BYTES * Byte.SIZE);
+        }
+        BitVector vector = builder.build();
+
+        // BitVector.equals compares the arrays themselves, hence the strings
+        for (int start = -width; start <= width; start++) {
+            if (!vector.extractWrapped(start, width).toString().equals(fromWords(formerExtract(words, true, start, width)).toString())
+                    || !vector.extractZeroExtended(start, width).toString().equals(fromWords(formerExtract(words, false, start, width)).toString()))
+                throw new AssertionError("different extraction at " + start);
+        }
+
+        // The first rounds warm the JIT up, the last one is printed
+        long former = 0, current = 0;
+        int sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                int start = i % width - width / 2;
+                sink += formerExtract(words, true, start, width)[0] & 1;
+                sink += formerExtract(words, false, start, width)[0] & 1;
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                int start = i % width - width / 2;
+                sink += vector.extractWrapped(start, width).testBit(0) ? 1 : 0;
+                sink += vector.extractZeroExtended(start, width).testBit(0) ? 1 : 0;
+            }
+            long t2 = System.nanoTime();
+            former = t1 - t0;
+            current = t2 - t1;
+        }
+
+        System.out.printf("width %d: former %.1f ns, current %.1f ns per extraction (x%.1f) [%d]%n",
+                width, former / (2.0 * iterations), current / (2.0 * iterations),
+                (double) former / current, sink & 1);
+    }
+
+    private static BitVector fromWords(int[] words) {
+        BitVector.Builder builder = new BitVector.Builder(words.length * Integer.SIZE);
+        for (int i = 0; i < words.length * Integer.BYTES; i++)
+            builder.setByte(i, Bits.extract(words[i / Integer.BYTES], i % Integer.BYTES * Byte.SIZE, Byte.SIZE));
+        return builder.build();
+    }
+
+    // The extraction as BitVector computed it before, word by word
+    private static int[] formerExtract(int[] words, boolean wrapped, int startIndex, int size) {
+        int[] result = new int[size / Integer.SIZE];
+        for (int i = 0; i < result.length; i++)
+            result[i] = formerIntAt(words, wrapped, startIndex + i * Integer.SIZE);
+        return result;
+    }
+
+    private static int formerIntAt(int[] words, boolean wrapped, int index) {
+        int quotien = Math.floorDiv(index, Integer.SIZE);
+        int rest    = Math.floorMod(index, Integer.SIZE);
+
+        if (rest == 0) {
+            if (wrapped)
+                return words[Math.floorMod(quotien, words.length)];
+            else
+                return index < 0 || quotien >= words.length ? 0 : words[quotien];
+        } else {
+            int lowInt  = formerIntAt(words, wrapped, quotien * Integer.SIZE);
+            int highInt = formerIntAt(words, wrapped, (quotien + 1) * Integer.SIZE);
+            int breakIndex = Integer.SIZE - rest;
+            return highInt << breakIndex | Bits.clip(breakIndex, lowInt >> rest);
+        }
+    }
+}